@@ -0,0 +1,87 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reads and writes of the caches while other threads use them, with
+ * three reading threads for every writing thread. Lookups hit about half of
+ * the time, since the key space is twice the size of the caches.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final int SIZE = 100000;
+
+    private UUID[] keys = new UUID[SIZE * 2];
+    private CacheManager<UUID, String> cache;
+    private UUIDCacheManager<String> uuidCache;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        cache = CacheManager.create(LoggerFactory.getLogger("benchmark"), SIZE, 60);
+        uuidCache = UUIDCacheManager.create(LoggerFactory.getLogger("benchmark"), SIZE, 60);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID();
+            cache.update(keys[i], "value");
+            uuidCache.update(keys[i], "value");
+        }
+    }
+
+    @Benchmark
+    @Group("cacheManager")
+    @GroupThreads(3)
+    public String cacheManagerGet() {
+        return cache.getIfPresent(randomKey());
+    }
+
+    @Benchmark
+    @Group("cacheManager")
+    @GroupThreads(1)
+    public void cacheManagerPut() {
+        cache.update(randomKey(), "value");
+    }
+
+    @Benchmark
+    @Group("uuidCacheManager")
+    @GroupThreads(3)
+    public String uuidCacheManagerGet() {
+        return uuidCache.getIfPresent(randomKey());
+    }
+
+    @Benchmark
+    @Group("uuidCacheManager")
+    @GroupThreads(1)
+    public void uuidCacheManagerPut() {
+        uuidCache.update(randomKey(), "value");
+    }
+
+    private UUID randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the memory taken by the caches when they are filled with 500,000
+ * entries which share one value. Run it with the GC profiler, for example:
+ * gradle jmh -PjmhArgs="FootprintBenchmark -prof gc", and read the
+ * gc.alloc.rate.norm lines, which give the bytes allocated to build one
+ * filled cache. The keys are created beforehand, so for CacheManager their
+ * UUID objects are not counted although it has to keep them alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FootprintBenchmark {
+
+    private static final int SIZE = 500000;
+
+    private Logger logger = LoggerFactory.getLogger("benchmark");
+    private UUID[] keys = new UUID[SIZE];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public CacheManager<UUID, String> cacheManager() {
+        CacheManager<UUID, String> cache = CacheManager.create(logger, SIZE, 60);
+        for (UUID key : keys) {
+            cache.update(key, "value");
+        }
+        return cache;
+    }
+
+    @Benchmark
+    public UUIDCacheManager<String> uuidCacheManager() {
+        UUIDCacheManager<String> cache = UUIDCacheManager.create(logger, SIZE, 60);
+        for (UUID key : keys) {
+            cache.update(key, "value");
+        }
+        return cache;
+    }
+}
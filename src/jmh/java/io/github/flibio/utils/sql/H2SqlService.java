@@ -0,0 +1,75 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.LoggerFactory;
+import org.spongepowered.api.service.sql.SqlService;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * Stands in for the SqlService of the server, so SqlManagers can be
+ * benchmarked without one. Connections are pooled by HikariCP like in the
+ * SqlService of Sponge, which hands out the same physical connections again,
+ * so statement caching works as it does on a server.
+ */
+class H2SqlService implements SqlService {
+
+    private static final int POOL_SIZE = 10;
+
+    private final Map<String, HikariDataSource> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public DataSource getDataSource(String jdbcConnection) {
+        return pools.computeIfAbsent(jdbcConnection, url -> {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setJdbcUrl(url);
+            pool.setMaximumPoolSize(POOL_SIZE);
+            return pool;
+        });
+    }
+
+    @Override
+    public DataSource getDataSource(Object plugin, String jdbcConnection) {
+        return getDataSource(jdbcConnection);
+    }
+
+    @Override
+    public Optional<String> getConnectionUrlFromAlias(String alias) {
+        return Optional.empty();
+    }
+
+    /**
+     * Closes the connections of every pool.
+     */
+    void dispose() {
+        for (HikariDataSource pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    /**
+     * Creates a manager of a new in-memory database.
+     *
+     * @param name The name of the database.
+     * @return The initialized manager.
+     */
+    SqlManager createManager(String name) {
+        LocalSqlManager manager = new LocalSqlManager(LoggerFactory.getLogger("benchmark"), "mem:", name + ";DB_CLOSE_DELAY=-1", this);
+        if (!manager.initialTestConnection()) {
+            throw new IllegalStateException("Failed to open the benchmark database");
+        }
+        // Keep the slow query log out of the measurements
+        manager.getQueryMetrics().setSlowQueryThreshold(0, TimeUnit.MILLISECONDS);
+        return manager;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading query results of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int TABLE_SIZE = 10000;
+
+    @Param({"1", "100", "10000"})
+    public int results;
+
+    private H2SqlService service = new H2SqlService();
+    private SqlManager manager;
+
+    @Setup
+    public void setup() {
+        manager = service.createManager("query");
+        manager.executeUpdate("CREATE TABLE balances (id INT PRIMARY KEY, name VARCHAR(16), amount BIGINT)");
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            rows.add(new Object[] {i, "player" + i, (long) i * 100});
+        }
+        manager.executeBatch("INSERT INTO balances (id, name, amount) VALUES (?, ?, ?)", rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.executeUpdate("DROP TABLE balances");
+        service.dispose();
+    }
+
+    @Benchmark
+    public List<Long> queryTypeList() {
+        return manager.queryTypeList("amount", Long.class, "SELECT amount FROM balances WHERE id < ?", results);
+    }
+
+    @Benchmark
+    public List<Account> queryRows() {
+        return manager.queryRows(BeanRowMapper.of(Account.class), "SELECT id, name, amount FROM balances WHERE id < ?", results);
+    }
+
+    @Benchmark
+    public Optional<Long> queryType() {
+        return manager.queryType("amount", Long.class, "SELECT amount FROM balances WHERE id = ?", results - 1);
+    }
+
+    public static class Account {
+
+        private int id;
+        private String name;
+        private long amount;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares updating rows one statement at a time against sending them in
+ * one batch. Both benchmarks update the same amount of rows per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+
+    private static final String UPDATE = "UPDATE balances SET amount = amount + ? WHERE id = ?";
+
+    @Param({"1", "10", "100", "1000"})
+    public int rows;
+
+    private H2SqlService service = new H2SqlService();
+    private SqlManager manager;
+    private PreparedUpdate prepared;
+    private List<Object[]> batch = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        manager = service.createManager("update");
+        manager.executeUpdate("CREATE TABLE balances (id INT PRIMARY KEY, amount BIGINT)");
+        List<Object[]> initial = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            initial.add(new Object[] {i, 0L});
+            batch.add(new Object[] {1L, i});
+        }
+        manager.executeBatch("INSERT INTO balances (id, amount) VALUES (?, ?)", initial);
+        prepared = manager.prepareUpdate(UPDATE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.executeUpdate("DROP TABLE balances");
+        service.dispose();
+    }
+
+    @Benchmark
+    public int singleUpdates() {
+        int updated = 0;
+        for (int i = 0; i < rows; i++) {
+            if (manager.executeUpdate(UPDATE, 1L, i)) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    @Benchmark
+    public int preparedUpdates() {
+        int updated = 0;
+        for (int i = 0; i < rows; i++) {
+            if (prepared.execute(1L, i)) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    @Benchmark
+    public int[] batchUpdate() {
+        return manager.executeBatch(UPDATE, batch);
+    }
+}
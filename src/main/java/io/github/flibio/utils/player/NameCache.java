@@ -0,0 +1,252 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.player;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of player names and UUIDs which can be looked up in both
+ * directions. Names are matched case-insensitively and are returned with the
+ * case they were resolved with.
+ *
+ * <p>The cache can be saved to a file when the server stops and loaded when
+ * it starts, so players who were resolved before a restart are not looked up
+ * again. Entries keep the time they were resolved, so loaded entries expire
+ * at the same time they would have expired without the restart.</p>
+ */
+public class NameCache {
+
+    private static final int FILE_MAGIC = 0x4E414D45;
+    private static final int VERSION = 1;
+
+    private long ttl;
+    private Cache<String, Entry> byName;
+    private Cache<UUID, Entry> byId;
+
+    private NameCache(long maxSize, long minutes) {
+        this.ttl = TimeUnit.MINUTES.toMillis(minutes);
+        // An entry evicted from one direction is removed from the other as well, so both stay consistent
+        this.byName = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(minutes, TimeUnit.MINUTES)
+                .<String, Entry>removalListener(n -> {
+                    if (n.wasEvicted() && n.getValue() != null) {
+                        byId.asMap().remove(n.getValue().uuid, n.getValue());
+                    }
+                }).build();
+        this.byId = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(minutes, TimeUnit.MINUTES)
+                .<UUID, Entry>removalListener(n -> {
+                    if (n.wasEvicted() && n.getValue() != null) {
+                        byName.asMap().remove(key(n.getValue().name), n.getValue());
+                    }
+                }).build();
+    }
+
+    /**
+     * Creates a new NameCache.
+     *
+     * @param maxSize The maximum amount of players.
+     * @param minutes The minutes after which a player has to be resolved
+     *        again.
+     * @return The new NameCache.
+     */
+    public static NameCache create(long maxSize, long minutes) {
+        return new NameCache(maxSize, minutes);
+    }
+
+    /**
+     * Stores the name of a player. A previous name of the player, or a
+     * previous player with the name, is removed.
+     *
+     * @param uuid The UUID of the player.
+     * @param name The name of the player.
+     */
+    public void put(UUID uuid, String name) {
+        put(new Entry(uuid, name, System.currentTimeMillis()));
+    }
+
+    /**
+     * Gets the UUID of a player.
+     *
+     * @param name The name of the player, in any case.
+     * @return The UUID, if the player is cached.
+     */
+    public Optional<UUID> getUUID(String name) {
+        Entry entry = byName.getIfPresent(key(name));
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.uuid);
+    }
+
+    /**
+     * Gets the name of a player.
+     *
+     * @param uuid The UUID of the player.
+     * @return The name, if the player is cached.
+     */
+    public Optional<String> getName(UUID uuid) {
+        Entry entry = byId.getIfPresent(uuid);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.name);
+    }
+
+    /**
+     * Removes a player.
+     *
+     * @param uuid The UUID of the player.
+     */
+    public synchronized void invalidate(UUID uuid) {
+        Entry entry = byId.getIfPresent(uuid);
+        byId.invalidate(uuid);
+        if (entry != null) {
+            byName.asMap().remove(key(entry.name), entry);
+        }
+    }
+
+    public synchronized void clear() {
+        byName.invalidateAll();
+        byId.invalidateAll();
+    }
+
+    /**
+     * Gets the amount of players in the cache, including expired players
+     * which have not been removed yet.
+     *
+     * @return The size.
+     */
+    public long size() {
+        return byId.size();
+    }
+
+    /**
+     * Saves the players to a file. The file is replaced atomically, so a
+     * failed save does not damage a previous file.
+     *
+     * @param file The file.
+     * @return If the players were saved.
+     */
+    public boolean save(Path file) {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : byId.asMap().values()) {
+            if (!isExpired(entry, now)) {
+                entries.add(entry);
+            }
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    out.writeInt(FILE_MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(entries.size());
+                    for (Entry entry : entries) {
+                        out.writeLong(entry.uuid.getMostSignificantBits());
+                        out.writeLong(entry.uuid.getLeastSignificantBits());
+                        out.writeLong(entry.time);
+                        out.writeUTF(entry.name);
+                    }
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Loads the players from a file created by {@link #save(Path)}. Players
+     * which expired in the meantime are skipped, and players which were
+     * resolved since the file was saved are kept.
+     *
+     * @param file The file.
+     * @return If the file was loaded or does not exist.
+     */
+    public boolean load(Path file) {
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                long time = in.readLong();
+                Entry entry = new Entry(uuid, in.readUTF(), time);
+                if (!isExpired(entry, now)) {
+                    put(entry);
+                }
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private synchronized void put(Entry entry) {
+        Entry previous = byId.getIfPresent(entry.uuid);
+        // The name may have belonged to another player before
+        Entry owner = byName.getIfPresent(key(entry.name));
+        if ((previous != null && previous.time > entry.time) || (owner != null && owner.time > entry.time)) {
+            return;
+        }
+        if (previous != null) {
+            byName.asMap().remove(key(previous.name), previous);
+        }
+        if (owner != null && !owner.uuid.equals(entry.uuid)) {
+            byId.asMap().remove(owner.uuid, owner);
+        }
+        byId.put(entry.uuid, entry);
+        byName.put(key(entry.name), entry);
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.time >= ttl;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+
+        final UUID uuid;
+        final String name;
+        final long time;
+
+        Entry(UUID uuid, String name, long time) {
+            this.uuid = uuid;
+            this.name = name;
+            this.time = time;
+        }
+    }
+}
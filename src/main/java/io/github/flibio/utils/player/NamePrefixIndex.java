@@ -0,0 +1,333 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.player;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An index of player names for completing names by prefix, for example in
+ * tab completion. Names are matched case-insensitively and are returned with
+ * the case they were added with, in case-insensitive order.
+ *
+ * <p>The names are stored as UTF-8 bytes with a length byte in one sorted
+ * array, with an int offset per name for the binary search, which takes
+ * about 15 bytes per Minecraft name. Added names are kept in a small sorted
+ * tree until {@value #MERGE_THRESHOLD} of them are collected, and are then
+ * merged into the array at once. Queries search both. All methods are
+ * synchronized.</p>
+ */
+public class NamePrefixIndex {
+
+    /**
+     * The amount of added names which are merged into the sorted array at
+     * once.
+     */
+    public static final int MERGE_THRESHOLD = 4096;
+
+    private static final int MAX_LENGTH = 255;
+
+    private byte[] arena = new byte[0];
+    private int[] offsets = new int[0];
+    private TreeMap<String, String> pending = new TreeMap<>();
+
+    private NamePrefixIndex() {
+    }
+
+    /**
+     * Creates a new, empty NamePrefixIndex.
+     *
+     * @return The new NamePrefixIndex.
+     */
+    public static NamePrefixIndex create() {
+        return new NamePrefixIndex();
+    }
+
+    /**
+     * Adds a name. If the name is already indexed in a different case, the
+     * case is updated.
+     *
+     * @param name The name.
+     * @return If the name was not indexed before.
+     */
+    public synchronized boolean add(String name) {
+        boolean added = insert(name);
+        if (pending.size() >= MERGE_THRESHOLD) {
+            merge();
+        }
+        return added;
+    }
+
+    /**
+     * Adds many names, for example the known players when the server starts.
+     * The names are merged into the sorted array once at the end.
+     *
+     * @param names The names.
+     */
+    public synchronized void addAll(Iterable<String> names) {
+        // Sorting all names at once is faster than inserting them into the tree one by one
+        List<Map.Entry<String, String>> added = new ArrayList<>(pending.entrySet());
+        for (String name : names) {
+            if (isValid(name) && !updateCase(name)) {
+                added.add(new AbstractMap.SimpleImmutableEntry<>(fold(name), name));
+            }
+        }
+        added.sort(Map.Entry.comparingByKey());
+        List<String> sorted = new ArrayList<>(added.size());
+        for (int i = 0; i < added.size(); i++) {
+            // The sort is stable, so the last name added with a key is kept
+            if (i + 1 == added.size() || !added.get(i).getKey().equals(added.get(i + 1).getKey())) {
+                sorted.add(added.get(i).getValue());
+            }
+        }
+        pending.clear();
+        merge(sorted);
+    }
+
+    private boolean insert(String name) {
+        if (!isValid(name) || updateCase(name)) {
+            return false;
+        }
+        return pending.put(fold(name), name) == null;
+    }
+
+    private boolean isValid(String name) {
+        int length = name.getBytes(StandardCharsets.UTF_8).length;
+        return length > 0 && length <= MAX_LENGTH;
+    }
+
+    /**
+     * Updates the case of a name if it is in the sorted array.
+     *
+     * @return If the name is in the sorted array.
+     */
+    private boolean updateCase(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int index = search(fold(bytes));
+        if (index < 0) {
+            return false;
+        }
+        int offset = offsets[index];
+        if ((arena[offset] & 0xFF) == bytes.length) {
+            System.arraycopy(bytes, 0, arena, offset + 1, bytes.length);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a name is indexed, in any case.
+     *
+     * @param name The name.
+     * @return If the name is indexed.
+     */
+    public synchronized boolean contains(String name) {
+        return pending.containsKey(fold(name)) || search(fold(name.getBytes(StandardCharsets.UTF_8))) >= 0;
+    }
+
+    /**
+     * Gets the names which start with a prefix, in any case.
+     *
+     * @param prefix The prefix. An empty prefix matches all names.
+     * @param limit The maximum amount of names. No names are returned if it
+     *        is not positive.
+     * @return The names, in case-insensitive order.
+     */
+    public synchronized List<String> complete(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        byte[] probe = fold(prefix.getBytes(StandardCharsets.UTF_8));
+        String key = fold(prefix);
+        List<String> names = new ArrayList<>(Math.min(limit, 16));
+        int index = lowerBound(probe);
+        Iterator<Map.Entry<String, String>> tree = pending.tailMap(key, true).entrySet().iterator();
+        Map.Entry<String, String> next = nextMatch(tree, key);
+        while (names.size() < limit) {
+            boolean inArray = index < offsets.length && startsWith(offsets[index], probe);
+            if (!inArray && next == null) {
+                break;
+            }
+            if (inArray && (next == null || compare(offsets[index], next.getKey().getBytes(StandardCharsets.UTF_8)) < 0)) {
+                names.add(read(offsets[index++]));
+            } else {
+                names.add(next.getValue());
+                next = nextMatch(tree, key);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Gets the amount of indexed names.
+     *
+     * @return The size.
+     */
+    public synchronized int size() {
+        return offsets.length + pending.size();
+    }
+
+    /**
+     * Merges the added names into the sorted array now instead of when
+     * {@value #MERGE_THRESHOLD} names are collected.
+     */
+    public synchronized void merge() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> sorted = new ArrayList<>(pending.values());
+        pending.clear();
+        merge(sorted);
+    }
+
+    public synchronized void clear() {
+        arena = new byte[0];
+        offsets = new int[0];
+        pending.clear();
+    }
+
+    /**
+     * Merges names which are sorted by their folded form and are not in the
+     * sorted array into it.
+     */
+    private void merge(List<String> sorted) {
+        List<byte[]> added = new ArrayList<>(sorted.size());
+        int bytes = arena.length;
+        for (String name : sorted) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            added.add(encoded);
+            bytes += 1 + encoded.length;
+        }
+        byte[] merged = new byte[bytes];
+        int[] mergedOffsets = new int[offsets.length + added.size()];
+        int position = 0;
+        int index = 0;
+        int count = 0;
+        for (byte[] name : added) {
+            byte[] folded = fold(name);
+            while (index < offsets.length && compare(offsets[index], folded) < 0) {
+                position = copy(offsets[index++], merged, position, mergedOffsets, count++);
+            }
+            mergedOffsets[count++] = position;
+            merged[position] = (byte) name.length;
+            System.arraycopy(name, 0, merged, position + 1, name.length);
+            position += 1 + name.length;
+        }
+        while (index < offsets.length) {
+            position = copy(offsets[index++], merged, position, mergedOffsets, count++);
+        }
+        arena = merged;
+        offsets = mergedOffsets;
+    }
+
+    private int copy(int offset, byte[] target, int position, int[] targetOffsets, int index) {
+        int length = 1 + (arena[offset] & 0xFF);
+        System.arraycopy(arena, offset, target, position, length);
+        targetOffsets[index] = position;
+        return position + length;
+    }
+
+    private Map.Entry<String, String> nextMatch(Iterator<Map.Entry<String, String>> tree, String key) {
+        if (tree.hasNext()) {
+            Map.Entry<String, String> entry = tree.next();
+            if (entry.getKey().startsWith(key)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a name in the sorted array.
+     *
+     * @return The index of the name, or a negative value if it is not in the
+     *         array.
+     */
+    private int search(byte[] folded) {
+        int index = lowerBound(folded);
+        return (index < offsets.length && compare(offsets[index], folded) == 0) ? index : -1;
+    }
+
+    /**
+     * Finds the first name in the sorted array which is not less than the
+     * folded bytes.
+     */
+    private int lowerBound(byte[] folded) {
+        int low = 0;
+        int high = offsets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(offsets[middle], folded) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares a name in the array to folded bytes, ignoring the case of the
+     * name.
+     */
+    private int compare(int offset, byte[] folded) {
+        int length = arena[offset] & 0xFF;
+        int common = Math.min(length, folded.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (fold(arena[offset + 1 + i]) & 0xFF) - (folded[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - folded.length;
+    }
+
+    private boolean startsWith(int offset, byte[] folded) {
+        if ((arena[offset] & 0xFF) < folded.length) {
+            return false;
+        }
+        for (int i = 0; i < folded.length; i++) {
+            if (fold(arena[offset + 1 + i]) != folded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String read(int offset) {
+        return new String(arena, offset + 1, arena[offset] & 0xFF, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lower cases the ASCII letters of a name, which are the only letters
+     * Minecraft names may contain, so the order of the bytes and of the
+     * string stay the same.
+     */
+    private static byte[] fold(byte[] bytes) {
+        byte[] folded = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            folded[i] = fold(bytes[i]);
+        }
+        return folded;
+    }
+
+    private static byte fold(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static String fold(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -4,47 +4,577 @@
 
 package io.github.flibio.utils.player;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.profile.GameProfile;
-import org.spongepowered.api.profile.GameProfileManager;
+import org.spongepowered.api.profile.ProfileNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class NameUtils {
 
     /**
-     * Looks up a player's UUID.
-     * 
+     * The time in seconds after which a lookup without an explicit timeout
+     * gives up.
+     */
+    public static final long DEFAULT_TIMEOUT_SECONDS = 10;
+
+    /**
+     * The maximum amount of names which are resolved in one request, the
+     * limit of the Mojang API.
+     */
+    public static final int MAX_NAMES_PER_REQUEST = 10;
+
+    /**
+     * The minutes for which a player who was not found is not looked up
+     * again.
+     */
+    public static final long NEGATIVE_CACHE_MINUTES = 10;
+
+    private static volatile NameCache cache = NameCache.create(10000, 60);
+    private static volatile NamePrefixIndex prefixIndex = NamePrefixIndex.create();
+    private static ScheduledExecutorService timeoutExecutor;
+    private static final Map<Object, Executor> mainThreadExecutors = new ConcurrentHashMap<>();
+
+    private static final Cache<String, Boolean> missingNames = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(NEGATIVE_CACHE_MINUTES, TimeUnit.MINUTES)
+            .build();
+    private static final Cache<UUID, Boolean> missingIds = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(NEGATIVE_CACHE_MINUTES, TimeUnit.MINUTES)
+            .build();
+    private static final Map<String, CompletableFuture<Optional<UUID>>> pendingNames = new ConcurrentHashMap<>();
+    private static final Map<UUID, CompletableFuture<Optional<String>>> pendingIds = new ConcurrentHashMap<>();
+
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong negativeHits = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Looks up a player's UUID. Blocks until the lookup completes, so it
+     * should not be called on the main thread; use
+     * {@link #getUUIDAsync(String)} there instead.
+     *
      * @param name Name of the player whom to lookup.
      * @return The UUID found.
      */
     public static Optional<UUID> getUUID(String name) {
-        GameProfileManager manager = Sponge.getServer().getGameProfileManager();
-        GameProfile profile;
-        try {
-            profile = manager.get(name).get();
-        } catch (InterruptedException | ExecutionException e) {
-            return Optional.empty();
-        }
-        return Optional.of(profile.getUniqueId());
+        return await(getUUIDAsync(name), Optional.empty());
     }
 
     /**
-     * Looks up a player's name.
-     * 
+     * Looks up a player's name. Blocks until the lookup completes, so it
+     * should not be called on the main thread; use
+     * {@link #getNameAsync(UUID)} there instead.
+     *
      * @param uuid UUID of the player whom to lookup.
      * @return Name of the corresponding player.
      */
     public static Optional<String> getName(UUID uuid) {
-        GameProfileManager manager = Sponge.getServer().getGameProfileManager();
-        GameProfile profile;
+        return await(getNameAsync(uuid), Optional.empty());
+    }
+
+    /**
+     * Looks up the UUIDs of many players at once. Blocks until the lookup
+     * completes, so it should not be called on the main thread; use
+     * {@link #getUUIDsAsync(Collection)} there instead.
+     *
+     * @param names Names of the players whom to lookup.
+     * @return The UUIDs found, by the names as they were passed.
+     */
+    public static Map<String, UUID> getUUIDs(Collection<String> names) {
+        return await(getUUIDsAsync(names), Collections.emptyMap());
+    }
+
+    /**
+     * Looks up the names of many players at once. Blocks until the lookup
+     * completes, so it should not be called on the main thread; use
+     * {@link #getNamesAsync(Collection)} there instead.
+     *
+     * @param uuids UUIDs of the players whom to lookup.
+     * @return The names found, by UUID.
+     */
+    public static Map<UUID, String> getNames(Collection<UUID> uuids) {
+        return await(getNamesAsync(uuids), Collections.emptyMap());
+    }
+
+    /**
+     * Looks up a player's UUID without blocking, giving up after
+     * {@link #DEFAULT_TIMEOUT_SECONDS}.
+     *
+     * @param name Name of the player whom to lookup.
+     * @return A future of the UUID found. Never completes exceptionally.
+     * @see #getUUIDAsync(String, long, TimeUnit)
+     */
+    public static CompletableFuture<Optional<UUID>> getUUIDAsync(String name) {
+        return getUUIDAsync(name, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Looks up a player's UUID without blocking. The future is completed on
+     * the thread which finished the lookup, so use {@link #mainThread(Object)}
+     * to continue on the main thread:
+     * {@code getUUIDAsync(name, 5, TimeUnit.SECONDS).thenAcceptAsync(uuid -> ..., NameUtils.mainThread(plugin))}.
+     *
+     * @param name Name of the player whom to lookup.
+     * @param timeout The time after which the lookup gives up.
+     * @param unit The unit of the timeout.
+     * @return A future of the UUID found, empty if the player was not found,
+     *         the lookup failed or it timed out. Never completes
+     *         exceptionally.
+     */
+    public static CompletableFuture<Optional<UUID>> getUUIDAsync(String name, long timeout, TimeUnit unit) {
+        Optional<UUID> cached = cache.getUUID(name);
+        if (cached.isPresent()) {
+            cacheHits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        if (missingNames.getIfPresent(key) != null) {
+            negativeHits.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        long limit = Math.max(unit.toMillis(timeout), TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS));
+        return withTimeout(coalesce(pendingNames, key, () -> lookup(() -> Sponge.getServer().getGameProfileManager().get(name),
+                profile -> Optional.of(profile.getUniqueId()), () -> missingNames.put(key, true), limit, TimeUnit.MILLISECONDS)),
+                Optional.empty(), timeout, unit);
+    }
+
+    /**
+     * Looks up a player's name without blocking, giving up after
+     * {@link #DEFAULT_TIMEOUT_SECONDS}.
+     *
+     * @param uuid UUID of the player whom to lookup.
+     * @return A future of the name of the corresponding player. Never
+     *         completes exceptionally.
+     * @see #getNameAsync(UUID, long, TimeUnit)
+     */
+    public static CompletableFuture<Optional<String>> getNameAsync(UUID uuid) {
+        return getNameAsync(uuid, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Looks up a player's name without blocking. The future is completed on
+     * the thread which finished the lookup, so use {@link #mainThread(Object)}
+     * to continue on the main thread.
+     *
+     * @param uuid UUID of the player whom to lookup.
+     * @param timeout The time after which the lookup gives up.
+     * @param unit The unit of the timeout.
+     * @return A future of the name of the corresponding player, empty if the
+     *         player was not found, the lookup failed or it timed out. Never
+     *         completes exceptionally.
+     */
+    public static CompletableFuture<Optional<String>> getNameAsync(UUID uuid, long timeout, TimeUnit unit) {
+        Optional<String> cached = cache.getName(uuid);
+        if (cached.isPresent()) {
+            cacheHits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (missingIds.getIfPresent(uuid) != null) {
+            negativeHits.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        long limit = Math.max(unit.toMillis(timeout), TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS));
+        return withTimeout(coalesce(pendingIds, uuid, () -> lookup(() -> Sponge.getServer().getGameProfileManager().get(uuid),
+                GameProfile::getName, () -> missingIds.put(uuid, true), limit, TimeUnit.MILLISECONDS)),
+                Optional.empty(), timeout, unit);
+    }
+
+    /**
+     * Looks up the UUIDs of many players at once without blocking, giving up
+     * after {@link #DEFAULT_TIMEOUT_SECONDS}.
+     *
+     * @param names Names of the players whom to lookup.
+     * @return A future of the UUIDs found. Never completes exceptionally.
+     * @see #getUUIDsAsync(Collection, long, TimeUnit)
+     */
+    public static CompletableFuture<Map<String, UUID>> getUUIDsAsync(Collection<String> names) {
+        return getUUIDsAsync(names, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Looks up the UUIDs of many players at once without blocking. Cached
+     * players are not looked up again, and the other names are resolved in
+     * parallel requests of {@link #MAX_NAMES_PER_REQUEST} names.
+     *
+     * @param names Names of the players whom to lookup.
+     * @param timeout The time after which the lookup gives up.
+     * @param unit The unit of the timeout.
+     * @return A future of the UUIDs found, by the names as they were passed.
+     *         Players which were not found are missing, and when the lookup
+     *         times out only the players resolved until then are included.
+     *         Never completes exceptionally.
+     */
+    public static CompletableFuture<Map<String, UUID>> getUUIDsAsync(Collection<String> names, long timeout, TimeUnit unit) {
+        Map<String, UUID> found = new ConcurrentHashMap<>();
+        Map<String, List<String>> missing = new LinkedHashMap<>();
+        for (String name : names) {
+            Optional<UUID> cached = cache.getUUID(name);
+            String key = name.toLowerCase(Locale.ROOT);
+            if (cached.isPresent()) {
+                cacheHits.incrementAndGet();
+                found.put(name, cached.get());
+            } else if (missingNames.getIfPresent(key) != null) {
+                negativeHits.incrementAndGet();
+            } else {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(name);
+            }
+        }
+        List<Supplier<CompletableFuture<Collection<GameProfile>>>> requests = new ArrayList<>();
+        for (List<String> chunk : Iterables.partition(missing.keySet(), MAX_NAMES_PER_REQUEST)) {
+            requests.add(() -> Sponge.getServer().getGameProfileManager().getAllByName(chunk, true).thenApply(profiles -> {
+                // Names which are missing from a successful response do not exist
+                Set<String> unknown = new HashSet<>(chunk);
+                for (GameProfile profile : profiles) {
+                    profile.getName().ifPresent(name -> unknown.remove(name.toLowerCase(Locale.ROOT)));
+                }
+                for (String name : unknown) {
+                    missingNames.put(name, true);
+                }
+                return profiles;
+            }));
+        }
+        return lookupAll(requests, found, profile -> profile.getName().ifPresent(name -> {
+            for (String requested : missing.getOrDefault(name.toLowerCase(Locale.ROOT), Collections.emptyList())) {
+                found.put(requested, profile.getUniqueId());
+            }
+        }), timeout, unit);
+    }
+
+    /**
+     * Looks up the names of many players at once without blocking, giving up
+     * after {@link #DEFAULT_TIMEOUT_SECONDS}.
+     *
+     * @param uuids UUIDs of the players whom to lookup.
+     * @return A future of the names found. Never completes exceptionally.
+     * @see #getNamesAsync(Collection, long, TimeUnit)
+     */
+    public static CompletableFuture<Map<UUID, String>> getNamesAsync(Collection<UUID> uuids) {
+        return getNamesAsync(uuids, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Looks up the names of many players at once without blocking. Cached
+     * players are not looked up again, and the others are resolved in a
+     * single request.
+     *
+     * @param uuids UUIDs of the players whom to lookup.
+     * @param timeout The time after which the lookup gives up.
+     * @param unit The unit of the timeout.
+     * @return A future of the names found, by UUID. Players which were not
+     *         found are missing, and when the lookup times out only the
+     *         players resolved until then are included. Never completes
+     *         exceptionally.
+     */
+    public static CompletableFuture<Map<UUID, String>> getNamesAsync(Collection<UUID> uuids, long timeout, TimeUnit unit) {
+        Map<UUID, String> found = new ConcurrentHashMap<>();
+        Set<UUID> missing = new LinkedHashSet<>();
+        for (UUID uuid : uuids) {
+            Optional<String> cached = cache.getName(uuid);
+            if (cached.isPresent()) {
+                cacheHits.incrementAndGet();
+                found.put(uuid, cached.get());
+            } else if (missingIds.getIfPresent(uuid) != null) {
+                negativeHits.incrementAndGet();
+            } else {
+                missing.add(uuid);
+            }
+        }
+        List<Supplier<CompletableFuture<Collection<GameProfile>>>> requests = new ArrayList<>();
+        if (!missing.isEmpty()) {
+            requests.add(() -> Sponge.getServer().getGameProfileManager().getAllById(missing, true).thenApply(profiles -> {
+                Set<UUID> unknown = new HashSet<>(missing);
+                for (GameProfile profile : profiles) {
+                    unknown.remove(profile.getUniqueId());
+                }
+                for (UUID uuid : unknown) {
+                    missingIds.put(uuid, true);
+                }
+                return profiles;
+            }));
+        }
+        return lookupAll(requests, found, profile -> {
+            if (missing.contains(profile.getUniqueId())) {
+                profile.getName().ifPresent(name -> found.put(profile.getUniqueId(), name));
+            }
+        }, timeout, unit);
+    }
+
+    /**
+     * Gets an executor which runs tasks on the main server thread, to hand
+     * the results of async lookups back to code which uses the Sponge API.
+     *
+     * @param plugin An instance of the main plugin class.
+     * @return The executor.
+     */
+    public static Executor mainThread(Object plugin) {
+        return mainThreadExecutors.computeIfAbsent(plugin, p -> Sponge.getScheduler().createSyncExecutor(p));
+    }
+
+    /**
+     * Gets the cache of resolved players. It holds 10,000 players for 60
+     * minutes unless it was replaced. To keep the players over a restart,
+     * call {@link NameCache#load(java.nio.file.Path)} when the server starts
+     * and {@link NameCache#save(java.nio.file.Path)} when it stops.
+     *
+     * @return The cache.
+     */
+    public static NameCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Replaces the cache of resolved players, for example to change its size.
+     *
+     * @param cache The new cache.
+     */
+    public static void setCache(NameCache cache) {
+        NameUtils.cache = cache;
+    }
+
+    /**
+     * Gets the amount of requests which were sent to the game profile
+     * manager. A bulk lookup counts once per request.
+     *
+     * @return The amount of requests.
+     */
+    public static long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * Gets the amount of players which were found in the cache instead of
+     * being looked up.
+     *
+     * @return The amount of players.
+     */
+    public static long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Gets the amount of players which were not looked up because they were
+     * recently not found.
+     *
+     * @return The amount of players.
+     */
+    public static long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    /**
+     * Gets the amount of lookups which shared the request of a concurrent
+     * lookup of the same player instead of sending their own.
+     *
+     * @return The amount of lookups.
+     */
+    public static long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the amount of requests which were saved by the cache, the
+     * negative cache and coalescing together.
+     *
+     * @return The amount of requests.
+     */
+    public static long getSavedLookupCount() {
+        return cacheHits.get() + negativeHits.get() + coalesced.get();
+    }
+
+    /**
+     * Joins the lookup of a key which is in flight, or starts a new lookup
+     * which later callers can join until it completes.
+     */
+    private static <K, T> CompletableFuture<Optional<T>> coalesce(Map<K, CompletableFuture<Optional<T>>> pending, K key,
+            Supplier<CompletableFuture<Optional<T>>> lookup) {
+        CompletableFuture<Optional<T>> created = new CompletableFuture<>();
+        CompletableFuture<Optional<T>> shared = pending.putIfAbsent(key, created);
+        if (shared != null) {
+            coalesced.incrementAndGet();
+            return shared;
+        }
+        lookup.get().whenComplete((value, error) -> {
+            // Removed before completing, so callers woken by the result start a new lookup instead of joining this one
+            pending.remove(key, created);
+            created.complete((error == null) ? value : Optional.empty());
+        });
+        return created;
+    }
+
+    /**
+     * Gets a copy of a future which completes with the fallback if the
+     * future does not complete in time. Completing the copy does not affect
+     * the future, so it can be shared between callers.
+     */
+    private static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, T fallback, long timeout, TimeUnit unit) {
+        CompletableFuture<T> result = future.thenApply(value -> value);
+        if (!result.isDone()) {
+            ScheduledFuture<?> timer = getTimeoutExecutor().schedule(() -> result.complete(fallback), timeout, unit);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the index of player names for tab completion. Every resolved
+     * player is added to it. Players who were not resolved since the server
+     * started, such as offline players, can be added with
+     * {@link NamePrefixIndex#addAll(Iterable)}.
+     *
+     * @return The index.
+     */
+    public static NamePrefixIndex getPrefixIndex() {
+        return prefixIndex;
+    }
+
+    /**
+     * Replaces the index of player names for tab completion.
+     *
+     * @param prefixIndex The new index.
+     */
+    public static void setPrefixIndex(NamePrefixIndex prefixIndex) {
+        NameUtils.prefixIndex = prefixIndex;
+    }
+
+    private static <T> CompletableFuture<Optional<T>> lookup(Supplier<CompletableFuture<GameProfile>> request,
+            Function<GameProfile, Optional<T>> mapper, Runnable notFound, long timeout, TimeUnit unit) {
+        CompletableFuture<Optional<T>> result = new CompletableFuture<>();
+        lookups.incrementAndGet();
+        try {
+            request.get().whenComplete((profile, error) -> {
+                try {
+                    if (error == null && profile != null) {
+                        remember(profile);
+                    } else if (isNotFound(error)) {
+                        notFound.run();
+                    }
+                    result.complete((error == null && profile != null) ? mapper.apply(profile) : Optional.empty());
+                } catch (RuntimeException e) {
+                    result.complete(Optional.empty());
+                }
+            });
+        } catch (RuntimeException e) {
+            // The server is not available or refused the lookup
+            result.complete(Optional.empty());
+        }
+        if (!result.isDone()) {
+            ScheduledFuture<?> timer = getTimeoutExecutor().schedule(() -> result.complete(Optional.empty()), timeout, unit);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Runs requests for many profiles in parallel and completes with the
+     * results which the consumer collected into the map, either when all
+     * requests completed or when the timeout passed.
+     */
+    private static <K, V> CompletableFuture<Map<K, V>> lookupAll(List<Supplier<CompletableFuture<Collection<GameProfile>>>> requests,
+            Map<K, V> found, Consumer<GameProfile> consumer, long timeout, TimeUnit unit) {
+        CompletableFuture<Map<K, V>> result = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(requests.size());
+        for (Supplier<CompletableFuture<Collection<GameProfile>>> request : requests) {
+            lookups.incrementAndGet();
+            try {
+                request.get().whenComplete((profiles, error) -> {
+                    if (error == null && profiles != null) {
+                        for (GameProfile profile : profiles) {
+                            try {
+                                remember(profile);
+                                consumer.accept(profile);
+                            } catch (RuntimeException e) {
+                                // Skip the profile, the others can still be used
+                            }
+                        }
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        result.complete(new HashMap<>(found));
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The server is not available or refused the lookup
+                if (remaining.decrementAndGet() == 0) {
+                    result.complete(new HashMap<>(found));
+                }
+            }
+        }
+        if (requests.isEmpty()) {
+            result.complete(new HashMap<>(found));
+        }
+        if (!result.isDone()) {
+            ScheduledFuture<?> timer = getTimeoutExecutor().schedule(() -> result.complete(new HashMap<>(found)), timeout, unit);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    private static void remember(GameProfile profile) {
+        profile.getName().ifPresent(name -> {
+            cache.put(profile.getUniqueId(), name);
+            prefixIndex.add(name);
+            missingNames.invalidate(name.toLowerCase(Locale.ROOT));
+        });
+        missingIds.invalidate(profile.getUniqueId());
+    }
+
+    private static boolean isNotFound(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof ProfileNotFoundException;
+    }
+
+    private static <T> T await(CompletableFuture<T> future, T fallback) {
         try {
-            profile = manager.get(uuid).get();
-        } catch (InterruptedException | ExecutionException e) {
-            return Optional.empty();
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException e) {
+            return fallback;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimeoutExecutor() {
+        if (timeoutExecutor == null) {
+            timeoutExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("utils-player-timeout-%d")
+                    .setDaemon(true)
+                    .build());
         }
-        return profile.getName();
+        return timeoutExecutor;
     }
 }
@@ -0,0 +1,380 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the operations of a {@link SqlManager} on a dedicated, bounded pool of
+ * threads. When the queue of the pool is full, new operations are rejected
+ * immediately instead of blocking the caller.
+ */
+public class AsyncSqlManager {
+
+    /**
+     * The default amount of threads, matching the default size of the
+     * connection pool provided by the SqlService.
+     */
+    public static final int DEFAULT_THREADS = 10;
+
+    /**
+     * The default amount of operations that can wait for a thread.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private SqlManager manager;
+    private int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private AsyncSqlManager(SqlManager manager, int threads, int queueCapacity) {
+        this.manager = manager;
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("utils-sql-async-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates a new AsyncSqlManager with the default amount of threads and
+     * queue capacity.
+     *
+     * @param manager The manager to run the operations with.
+     * @return The new AsyncSqlManager.
+     */
+    public static AsyncSqlManager create(SqlManager manager) {
+        return new AsyncSqlManager(manager, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new AsyncSqlManager.
+     *
+     * @param manager The manager to run the operations with.
+     * @param threads The amount of threads. Should not exceed the size of the
+     *        connection pool.
+     * @param queueCapacity The amount of operations that can wait for a
+     *        thread before new operations are rejected.
+     * @return The new AsyncSqlManager.
+     */
+    public static AsyncSqlManager create(SqlManager manager, int threads, int queueCapacity) {
+        return new AsyncSqlManager(manager, threads, queueCapacity);
+    }
+
+    /**
+     * Gets the manager the operations are run with.
+     *
+     * @return The manager.
+     */
+    public SqlManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Tests if the connection to the database is functional.
+     *
+     * @return If the connection to the database is functional.
+     */
+    public CompletableFuture<Boolean> testConnection() {
+        return submit(manager::testConnection);
+    }
+
+    /**
+     * Executes an update to the database.
+     *
+     * @param sql The sql to execute.
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return If the update was successful or not.
+     * @see SqlManager#executeUpdate(String, Object...)
+     */
+    public CompletableFuture<Boolean> executeUpdate(String sql, Object... vars) {
+        return submit(() -> manager.executeUpdate(sql, vars));
+    }
+
+    /**
+     * Executes an update once for every set of variables in a single batch.
+     *
+     * @param sql The sql to execute.
+     * @param rows The variables of each row.
+     * @return The update count of each row.
+     * @see SqlManager#executeBatch(String, List)
+     */
+    public CompletableFuture<int[]> executeBatch(String sql, List<Object[]> rows) {
+        return submit(() -> manager.executeBatch(sql, rows));
+    }
+
+    /**
+     * Inserts a row, or updates the row with the same keys if one exists, in
+     * a single statement. The future completes exceptionally with an
+     * {@link UnsupportedOperationException} if the database does not support
+     * upserts.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the primary or unique key of the
+     *        table, which must be contained in the values.
+     * @param values The value of each column.
+     * @return If the upsert was successful or not.
+     * @see SqlManager#upsert(String, String[], Map)
+     */
+    public CompletableFuture<Boolean> upsert(String table, String[] keyColumns, Map<String, ?> values) {
+        return submit(() -> manager.upsert(table, keyColumns, values));
+    }
+
+    /**
+     * Inserts many rows, or updates the rows with the same keys if they exist,
+     * in a single batch. The future completes exceptionally with an
+     * {@link UnsupportedOperationException} if the database does not support
+     * upserts.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the primary or unique key of the
+     *        table, which must be contained in the columns.
+     * @param columns The columns of the rows.
+     * @param rows The values of each row, in the order of the columns.
+     * @return The update count of each row.
+     * @see SqlManager#upsertBatch(String, String[], String[], List)
+     */
+    public CompletableFuture<int[]> upsertBatch(String table, String[] keyColumns, String[] columns, List<Object[]> rows) {
+        return submit(() -> manager.upsertBatch(table, keyColumns, columns, rows));
+    }
+
+    /**
+     * Runs statements in one transaction on a single connection, committing
+     * them together. The callback is run on a thread of this manager.
+     *
+     * @param callback The statements to run.
+     * @return The result of the callback, if the transaction succeeded and
+     *         the result is not null.
+     * @see SqlManager#transaction(TransactionCallback)
+     */
+    public <R> CompletableFuture<Optional<R>> transaction(TransactionCallback<R> callback) {
+        return submit(() -> manager.transaction(callback));
+    }
+
+    /**
+     * Runs statements in one transaction on a single connection, committing
+     * them together. The callback is run on a thread of this manager.
+     *
+     * @param isolation The isolation level, for example
+     *        {@link java.sql.Connection#TRANSACTION_SERIALIZABLE}.
+     * @param callback The statements to run.
+     * @return The result of the callback, if the transaction succeeded and
+     *         the result is not null.
+     * @see SqlManager#transaction(int, TransactionCallback)
+     */
+    public <R> CompletableFuture<Optional<R>> transaction(int isolation, TransactionCallback<R> callback) {
+        return submit(() -> manager.transaction(isolation, callback));
+    }
+
+    /**
+     * Queries the database and retrieves a column's data.
+     *
+     * @param columnName The column to retrieve that data of.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The column's data, if it was found.
+     * @see SqlManager#queryType(String, Class, String, Object...)
+     */
+    public <T> CompletableFuture<Optional<T>> queryType(String columnName, Class<T> type, String sql, Object... vars) {
+        return submit(() -> manager.queryType(columnName, type, sql, vars));
+    }
+
+    /**
+     * Queries the database and retrieves a list of data.
+     *
+     * @param columnName The column whose data will be added to the list.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The list of data.
+     * @see SqlManager#queryTypeList(String, Class, String, Object...)
+     */
+    public <T> CompletableFuture<List<T>> queryTypeList(String columnName, Class<T> type, String sql, Object... vars) {
+        return submit(() -> manager.queryTypeList(columnName, type, sql, vars));
+    }
+
+    /**
+     * Queries the database and maps the first row to an object.
+     *
+     * @param mapper The mapper of the row.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The mapped row, if it was found.
+     * @see SqlManager#queryRow(RowMapper, String, Object...)
+     */
+    public <T> CompletableFuture<Optional<T>> queryRow(RowMapper<T> mapper, String sql, Object... vars) {
+        return submit(() -> manager.queryRow(mapper, sql, vars));
+    }
+
+    /**
+     * Queries the database and maps every row to an object.
+     *
+     * @param mapper The mapper of the rows.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The list of mapped rows.
+     * @see SqlManager#queryRows(RowMapper, String, Object...)
+     */
+    public <T> CompletableFuture<List<T>> queryRows(RowMapper<T> mapper, String sql, Object... vars) {
+        return submit(() -> manager.queryRows(mapper, sql, vars));
+    }
+
+    /**
+     * Queries the rows of many keys at once and maps them by key.
+     *
+     * @param keys The keys to query.
+     * @param keyColumn The column which holds the key of a row.
+     * @param keyType The type of the keys.
+     * @param mapper The mapper of the rows.
+     * @param sql The sql to run, containing {@value SqlManager#KEYS_TOKEN}
+     *        once.
+     * @param vars The other variables to replace in the sql.
+     * @return The mapped row of every key which was found.
+     * @see SqlManager#queryMap(Collection, String, Class, RowMapper, String, Object...)
+     */
+    public <K, T> CompletableFuture<Map<K, T>> queryMap(Collection<? extends K> keys, String keyColumn, Class<K> keyType, RowMapper<T> mapper,
+            String sql, Object... vars) {
+        return submit(() -> manager.queryMap(keys, keyColumn, keyType, mapper, sql, vars));
+    }
+
+    /**
+     * Queries a column of the rows of many keys at once and maps it by key.
+     *
+     * @param keys The keys to query.
+     * @param keyColumn The column which holds the key of a row.
+     * @param keyType The type of the keys.
+     * @param columnName The column to retrieve the data of.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run, containing {@value SqlManager#KEYS_TOKEN}
+     *        once.
+     * @param vars The other variables to replace in the sql.
+     * @return The column's data of every key which was found.
+     * @see SqlManager#queryTypeMap(Collection, String, Class, String, Class, String, Object...)
+     */
+    public <K, T> CompletableFuture<Map<K, T>> queryTypeMap(Collection<? extends K> keys, String keyColumn, Class<K> keyType, String columnName,
+            Class<T> type, String sql, Object... vars) {
+        return submit(() -> manager.queryTypeMap(keys, keyColumn, keyType, columnName, type, sql, vars));
+    }
+
+    /**
+     * Queries the database and passes a column's data of every row to a
+     * consumer as it is read. The consumer is called on a thread of this
+     * manager.
+     *
+     * @param columnName The column whose data will be passed to the consumer.
+     * @param type The type of data to retrieve.
+     * @param fetchSize The amount of rows to fetch from the database at once.
+     * @param consumer The consumer of the data.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The amount of rows passed to the consumer.
+     * @see SqlManager#queryEach(String, Class, int, Consumer, String, Object...)
+     */
+    public <T> CompletableFuture<Long> queryEach(String columnName, Class<T> type, int fetchSize, Consumer<? super T> consumer, String sql,
+            Object... vars) {
+        return submit(() -> manager.queryEach(columnName, type, fetchSize, consumer, sql, vars));
+    }
+
+    /**
+     * Queries the database and checks if a row exists.
+     *
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return If the row was found or not.
+     * @see SqlManager#queryExists(String, Object...)
+     */
+    public CompletableFuture<Boolean> queryExists(String sql, Object... vars) {
+        return submit(() -> manager.queryExists(sql, vars));
+    }
+
+    /**
+     * Runs a custom operation on the threads of this manager.
+     *
+     * @param task The operation to run.
+     * @return The result of the operation.
+     */
+    public <R> CompletableFuture<R> submit(Supplier<R> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Gets the amount of operations waiting for a thread.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the amount of operations that can wait for a thread.
+     *
+     * @return The queue capacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the amount of operations currently running.
+     *
+     * @return The amount of active operations.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Gets the amount of operations that have finished running.
+     *
+     * @return The amount of completed operations.
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Gets the amount of operations rejected because the queue was full.
+     *
+     * @return The amount of rejected operations.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting new operations. Operations already queued still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps rows to objects with a no-argument constructor by setting the fields
+ * whose names match the column labels. Labels are matched ignoring case and
+ * underscores, so a column named {@code player_name} sets the field
+ * {@code playerName}. Columns without a matching field are ignored.
+ *
+ * <p>The fields are resolved once for every distinct set of columns and
+ * cached, so mapping a row only reads the columns by index.</p>
+ *
+ * @param <T> The type of object a row is mapped to.
+ */
+public class BeanRowMapper<T> implements RowMapper<T> {
+
+    private static final Map<Class<?>, BeanRowMapper<?>> mappers = new ConcurrentHashMap<>();
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private Class<T> type;
+    private MethodHandle constructor;
+    private Map<String, Field> fields = new HashMap<>();
+    private final Map<String, Bound> shapes = new ConcurrentHashMap<>();
+
+    private BeanRowMapper(Class<T> type) {
+        this.type = type;
+        try {
+            this.constructor = MethodHandles.lookup().unreflectConstructor(accessible(type.getDeclaredConstructor()))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName() + " does not have an accessible no-argument constructor", e);
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                    fields.putIfAbsent(normalize(field.getName()), field);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the mapper of a type. Mappers are cached, so this can be called
+     * for every query.
+     *
+     * @param <T> The type of object a row is mapped to.
+     * @param type The type, which must have a no-argument constructor.
+     * @return The mapper of the type.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BeanRowMapper<T> of(Class<T> type) {
+        return (BeanRowMapper<T>) mappers.computeIfAbsent(type, BeanRowMapper::new);
+    }
+
+    @Override
+    public RowMapper<T> bind(ResultSetMetaData meta) throws SQLException {
+        int count = meta.getColumnCount();
+        String[] labels = new String[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = meta.getColumnLabel(i + 1);
+        }
+        String shape = String.join("\u0000", labels);
+        Bound bound = shapes.get(shape);
+        if (bound == null) {
+            bound = new Bound(labels);
+            shapes.put(shape, bound);
+        }
+        return bound;
+    }
+
+    @Override
+    public T map(ResultSet rs) throws SQLException {
+        return bind(rs.getMetaData()).map(rs);
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase();
+    }
+
+    private static <A extends AccessibleObject> A accessible(A object) {
+        object.setAccessible(true);
+        return object;
+    }
+
+    /**
+     * The mapper of one set of columns, with a setter per column index.
+     */
+    private class Bound implements RowMapper<T> {
+
+        private MethodHandle[] setters;
+        private Class<?>[] types;
+
+        private Bound(String[] labels) {
+            setters = new MethodHandle[labels.length];
+            types = new Class<?>[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                Field field = fields.get(normalize(labels[i]));
+                if (field != null) {
+                    try {
+                        setters[i] = MethodHandles.lookup().unreflectSetter(accessible(field)).asType(SETTER);
+                        types[i] = field.getType();
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalArgumentException("Cannot set field " + field.getName() + " of " + type.getName(), e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public T map(ResultSet rs) throws SQLException {
+            try {
+                Object bean = constructor.invokeExact();
+                for (int i = 0; i < setters.length; i++) {
+                    if (setters[i] != null) {
+                        Object value = ColumnTypes.convert(rs.getObject(i + 1), types[i]);
+                        // Primitive fields keep their default for null values
+                        if (value != null || !types[i].isPrimitive()) {
+                            setters[i].invokeExact(bean, value);
+                        }
+                    }
+                }
+                return type.cast(bean);
+            } catch (SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new SQLException("Failed to map row to " + type.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Converts keys or entries of a cache to bytes and back, so they can be
+ * stored outside of the heap.
+ *
+ * @param <V> The type of the converted values.
+ */
+public interface CacheCodec<V> {
+
+    /**
+     * Converts a value to bytes.
+     *
+     * @param value The value.
+     * @return The bytes.
+     */
+    byte[] encode(V value);
+
+    /**
+     * Converts bytes created by {@link #encode(Object)} back to a value.
+     *
+     * @param bytes The bytes.
+     * @return The value.
+     */
+    V decode(byte[] bytes);
+
+    /**
+     * Gets a codec for strings, stored as UTF-8.
+     *
+     * @return The codec.
+     */
+    static CacheCodec<String> string() {
+        return new CacheCodec<String>() {
+
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * Gets a codec for UUIDs, stored as 16 bytes.
+     *
+     * @return The codec.
+     */
+    static CacheCodec<UUID> uuid() {
+        return new CacheCodec<UUID>() {
+
+            @Override
+            public byte[] encode(UUID value) {
+                return ByteBuffer.allocate(16).putLong(value.getMostSignificantBits()).putLong(value.getLeastSignificantBits()).array();
+            }
+
+            @Override
+            public UUID decode(byte[] bytes) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                return new UUID(buffer.getLong(), buffer.getLong());
+            }
+        };
+    }
+
+    /**
+     * Gets a codec which uses Java serialization. It works for any
+     * serializable type but is slower and larger than a dedicated codec.
+     *
+     * @param <V> The type of the converted values.
+     * @param type The type of the converted values.
+     * @return The codec.
+     */
+    static <V extends Serializable> CacheCodec<V> serializable(Class<V> type) {
+        return new CacheCodec<V>() {
+
+            @Override
+            public byte[] encode(V value) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            public V decode(byte[] bytes) {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return type.cast(in.readObject());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        };
+    }
+}
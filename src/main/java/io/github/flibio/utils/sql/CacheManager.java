@@ -6,21 +6,48 @@ package io.github.flibio.utils.sql;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
 import org.slf4j.Logger;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
 
 public class CacheManager<T, K> {
 
     private Logger logger;
     private Cache<T, K> cache;
 
+    private final AtomicLongArray removals = new AtomicLongArray(RemovalCause.values().length);
+    private final List<CacheMetricsSink> sinks = new CopyOnWriteArrayList<>();
+
     private CacheManager(Logger logger, long maxSize, long minutes) {
-        this.logger = logger;
-        this.cache = CacheBuilder.newBuilder()
+        this(logger, CacheBuilder.newBuilder()
                 .maximumSize(maxSize)
-                .expireAfterWrite(minutes, TimeUnit.MINUTES)
-                .build();
+                .expireAfterWrite(minutes, TimeUnit.MINUTES), null);
+    }
+
+    /**
+     * Creates a new CacheManager from a configured builder. Statistics are
+     * recorded and removals are passed to {@link #onRemoval}.
+     *
+     * @param logger The logger.
+     * @param builder The configured builder of the cache.
+     * @param loader The loader of the cache, or null for a cache which does
+     *        not load entries itself.
+     */
+    protected CacheManager(Logger logger, CacheBuilder<Object, Object> builder, CacheLoader<T, K> loader) {
+        this.logger = logger;
+        CacheBuilder<T, K> recording = builder.recordStats().removalListener(this::onRemoval);
+        this.cache = (loader == null) ? recording.build() : recording.build(loader);
     }
 
     public static CacheManager create(Logger logger, long maxSize, long minutes) {
@@ -35,7 +62,114 @@ public class CacheManager<T, K> {
         return cache.getIfPresent(key);
     }
 
+    /**
+     * Gets the entries of many keys, loading only the keys which are not
+     * cached with a single call to the loader, for example with
+     * {@link SqlManager#queryMap}. The loaded entries are cached.
+     *
+     * @param keys The keys.
+     * @param loader Loads the entries of the missing keys. Keys without an
+     *        entry are left out of the returned map.
+     * @return The entries of the keys which have one.
+     */
+    public Map<T, K> getAll(Iterable<? extends T> keys, Function<Set<T>, Map<T, K>> loader) {
+        Map<T, K> entries = new LinkedHashMap<>();
+        Set<T> missing = new LinkedHashSet<>();
+        for (T key : keys) {
+            K entry = getIfPresent(key);
+            if (entry != null) {
+                entries.put(key, entry);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<T, K> loaded = loader.apply(missing);
+            for (Map.Entry<T, K> entry : loaded.entrySet()) {
+                update(entry.getKey(), entry.getValue());
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the entry of a key.
+     *
+     * @param key The key.
+     */
+    public void invalidate(T key) {
+        cache.invalidate(key);
+    }
+
     public void clear() {
         cache.invalidateAll();
     }
+
+    /**
+     * Takes a snapshot of the statistics of the cache.
+     *
+     * @return The statistics.
+     */
+    public CacheStatsSnapshot getStats() {
+        long[] counts = new long[removals.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = removals.get(i);
+        }
+        return new CacheStatsSnapshot(cache.size(), cache.stats(), counts);
+    }
+
+    /**
+     * Adds a sink which receives the statistics of the cache every time they
+     * are published.
+     *
+     * @param sink The sink.
+     */
+    public void addMetricsSink(CacheMetricsSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Removes a sink added with {@link #addMetricsSink(CacheMetricsSink)}.
+     *
+     * @param sink The sink.
+     */
+    public void removeMetricsSink(CacheMetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Publishes a snapshot of the statistics to every sink. Intended to be
+     * called from a repeating task.
+     */
+    public void publishStats() {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        CacheStatsSnapshot snapshot = getStats();
+        for (CacheMetricsSink sink : sinks) {
+            try {
+                sink.accept(snapshot);
+            } catch (Exception e) {
+                logger.error("Failed to publish cache statistics: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Called whenever an entry is removed from the cache.
+     *
+     * @param notification The removed entry and the cause of its removal.
+     */
+    protected void onRemoval(RemovalNotification<T, K> notification) {
+        removals.incrementAndGet(notification.getCause().ordinal());
+    }
+
+    protected Cache<T, K> getCache() {
+        return cache;
+    }
+
+    protected Logger getLogger() {
+        return logger;
+    }
 }
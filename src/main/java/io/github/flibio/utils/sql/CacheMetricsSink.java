@@ -0,0 +1,20 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+/**
+ * Receives the statistics of a cache when they are published with
+ * {@link CacheManager#publishStats()}.
+ */
+@FunctionalInterface
+public interface CacheMetricsSink {
+
+    /**
+     * Receives a snapshot of the statistics of a cache.
+     *
+     * @param snapshot The statistics.
+     */
+    void accept(CacheStatsSnapshot snapshot);
+}
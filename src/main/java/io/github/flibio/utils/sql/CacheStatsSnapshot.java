@@ -0,0 +1,128 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The statistics of a {@link CacheManager} at one point in time. All counts
+ * are totals since the cache was created.
+ */
+public class CacheStatsSnapshot {
+
+    private long size;
+    private CacheStats stats;
+    private long[] removals;
+
+    CacheStatsSnapshot(long size, CacheStats stats, long[] removals) {
+        this.size = size;
+        this.stats = stats;
+        this.removals = removals;
+    }
+
+    /**
+     * Gets the approximate amount of entries in the cache.
+     *
+     * @return The size.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return stats.hitCount();
+    }
+
+    public long getMissCount() {
+        return stats.missCount();
+    }
+
+    /**
+     * Gets the ratio of requests which found an entry.
+     *
+     * @return The hit rate, from 0 to 1. 1 if there were no requests.
+     */
+    public double getHitRate() {
+        return stats.hitRate();
+    }
+
+    /**
+     * Gets the ratio of requests which did not find an entry.
+     *
+     * @return The miss rate, from 0 to 1. 0 if there were no requests.
+     */
+    public double getMissRate() {
+        return stats.missRate();
+    }
+
+    public long getLoadSuccessCount() {
+        return stats.loadSuccessCount();
+    }
+
+    public long getLoadExceptionCount() {
+        return stats.loadExceptionCount();
+    }
+
+    /**
+     * Gets the total time spent loading entries.
+     *
+     * @return The load time in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return stats.totalLoadTime();
+    }
+
+    /**
+     * Gets the average time spent loading an entry.
+     *
+     * @return The average load time in nanoseconds.
+     */
+    public double getAverageLoadPenalty() {
+        return stats.averageLoadPenalty();
+    }
+
+    /**
+     * Gets the amount of entries removed automatically, because of the size
+     * limit, expiry or garbage collection.
+     *
+     * @return The amount of evictions.
+     */
+    public long getEvictionCount() {
+        return stats.evictionCount();
+    }
+
+    /**
+     * Gets the amount of entries removed for a cause.
+     *
+     * @param cause The cause.
+     * @return The amount of removals.
+     */
+    public long getRemovalCount(RemovalCause cause) {
+        return removals[cause.ordinal()];
+    }
+
+    /**
+     * Gets the amount of entries removed for every cause.
+     *
+     * @return The amount of removals of each cause.
+     */
+    public Map<RemovalCause, Long> getRemovalCounts() {
+        Map<RemovalCause, Long> counts = new EnumMap<>(RemovalCause.class);
+        for (RemovalCause cause : RemovalCause.values()) {
+            counts.put(cause, removals[cause.ordinal()]);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatsSnapshot{size=" + size + ", hitRate=" + getHitRate() + ", missRate=" + getMissRate() + ", averageLoadPenalty="
+                + getAverageLoadPenalty() + ", evictions=" + getEvictionCount() + ", removals=" + getRemovalCounts() + "}";
+    }
+}
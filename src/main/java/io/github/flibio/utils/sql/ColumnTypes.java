@@ -0,0 +1,132 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.UUID;
+
+/**
+ * Converts the raw values of columns to the types requested by callers.
+ */
+final class ColumnTypes {
+
+    private ColumnTypes() {
+    }
+
+    /**
+     * Converts a raw column value to a type, only if no data is lost. Numbers
+     * are converted to another numeric type if the value fits exactly, 0 and
+     * 1 are converted to booleans, strings are parsed to UUIDs and UUIDs are
+     * converted to strings.
+     *
+     * @param raw The raw value of the column.
+     * @param type The requested type. Primitive types are treated as their
+     *        wrappers.
+     * @return The converted value, or null if it could not be converted
+     *         without losing data.
+     */
+    static Object convert(Object raw, Class<?> type) {
+        if (raw == null) {
+            return null;
+        }
+        Class<?> target = wrap(type);
+        if (target.isInstance(raw)) {
+            return raw;
+        }
+        if (raw instanceof Number) {
+            return convertNumber((Number) raw, target);
+        }
+        if (target == UUID.class && raw instanceof String) {
+            try {
+                return UUID.fromString((String) raw);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if (target == String.class && (raw instanceof UUID || raw instanceof Character)) {
+            return raw.toString();
+        }
+        return null;
+    }
+
+    private static Object convertNumber(Number number, Class<?> target) {
+        if (target == Double.class && number instanceof Float) {
+            return number.doubleValue();
+        }
+        try {
+            BigDecimal exact = toBigDecimal(number);
+            if (target == Integer.class) {
+                return exact.intValueExact();
+            } else if (target == Long.class) {
+                return exact.longValueExact();
+            } else if (target == Short.class) {
+                return exact.shortValueExact();
+            } else if (target == Byte.class) {
+                return exact.byteValueExact();
+            } else if (target == BigInteger.class) {
+                return exact.toBigIntegerExact();
+            } else if (target == BigDecimal.class) {
+                return exact;
+            } else if (target == Double.class) {
+                // Accepted if the double prints as the same decimal value
+                double value = exact.doubleValue();
+                return (new BigDecimal(Double.toString(value)).compareTo(exact) == 0) ? value : null;
+            } else if (target == Float.class) {
+                float value = exact.floatValue();
+                return (new BigDecimal(Float.toString(value)).compareTo(exact) == 0) ? value : null;
+            } else if (target == Boolean.class) {
+                if (exact.compareTo(BigDecimal.ZERO) == 0) {
+                    return false;
+                }
+                return (exact.compareTo(BigDecimal.ONE) == 0) ? true : null;
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            // The value does not fit, or is not a finite number
+        }
+        return null;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        } else if (number instanceof Double || number instanceof Float) {
+            return new BigDecimal(number.toString());
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    /**
+     * Gets the wrapper of a primitive type.
+     *
+     * @param type The type.
+     * @return The wrapper of the type, or the type itself if it is not
+     *         primitive.
+     */
+    static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps connections to observe when they are handed back.
+ */
+final class ConnectionHandles {
+
+    private ConnectionHandles() {
+    }
+
+    /**
+     * Wraps a connection so an action runs the first time it is closed. All
+     * other calls are passed to the connection unchanged.
+     *
+     * @param con The connection.
+     * @param onClose The action to run after the connection is closed.
+     * @return The wrapped connection.
+     */
+    static Connection onClose(Connection con, Runnable onClose) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            con.close();
+                        } finally {
+                            if (closed.compareAndSet(false, true)) {
+                                onClose.run();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(con, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Wraps a data source so an action runs when one of its connections is
+     * borrowed and again when it is closed. All other calls are passed to the
+     * data source unchanged.
+     *
+     * @param dataSource The data source.
+     * @param action The action to run.
+     * @return The wrapped data source.
+     */
+    static DataSource onBorrowAndClose(DataSource dataSource, Runnable action) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(dataSource, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("getConnection")) {
+                        action.run();
+                        return onClose((Connection) result, action);
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown instead of acquiring a connection while the {@link HealthMonitor} of
+ * a SqlManager considers the database unavailable.
+ */
+public class DatabaseUnavailableException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    DatabaseUnavailableException(String reason) {
+        super("The database is unavailable: " + reason, "08000");
+    }
+}
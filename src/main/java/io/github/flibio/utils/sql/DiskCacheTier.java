@@ -0,0 +1,377 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores serialized cache entries in a memory-mapped file, with an index of
+ * the entries in an off-heap hash table.
+ *
+ * <p>The file starts with a header of {@value #FILE_HEADER} bytes, followed
+ * by records which are appended in the order they are written. Every record
+ * starts with a magic number, the time it was written, the length of the key
+ * and the length of the value, followed by the key and value bytes. Removed
+ * records are marked dead and their space is reclaimed by compacting the file
+ * when it is full. The oldest records are dropped when the entry or byte
+ * limit is reached.</p>
+ *
+ * <p>The index stores the hash of the key and the offset of the record in 8
+ * bytes per slot and is rebuilt from the file when it is opened. Records
+ * which are older than the time limit are dropped while rebuilding.</p>
+ */
+class DiskCacheTier {
+
+    static final int FILE_HEADER = 16;
+
+    private static final int FILE_MAGIC = 0x55544331;
+    private static final int VERSION = 1;
+    private static final int LIVE = 0x52454331;
+    private static final int DEAD = 0x44454144;
+    private static final int RECORD_HEADER = 20;
+    private static final int SLOT = 8;
+    // The index has up to twice as many slots, which must fit into a direct buffer of at most 1 GiB
+    private static final int MAX_ENTRIES = 1 << 26;
+
+    private FileChannel channel;
+    private MappedByteBuffer data;
+    private int capacity;
+    private int maxEntries;
+    private long ttl;
+
+    private ByteBuffer index;
+    private int mask;
+    private int count = 0;
+    private long liveBytes = 0;
+    private int head = FILE_HEADER;
+    private int writePos = FILE_HEADER;
+
+    DiskCacheTier(Path file, long maxEntries, long maxBytes, long ttl, TimeUnit unit) throws IOException {
+        if (maxEntries <= 0 || maxEntries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("maxEntries must be between 1 and " + MAX_ENTRIES);
+        }
+        if (maxBytes <= FILE_HEADER + RECORD_HEADER || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must be between " + (FILE_HEADER + RECORD_HEADER) + " and " + Integer.MAX_VALUE);
+        }
+        this.capacity = (int) maxBytes;
+        this.maxEntries = (int) maxEntries;
+        this.ttl = unit.toMillis(ttl);
+        int slots = Integer.highestOneBit((int) maxEntries * 2 - 1) << 1;
+        this.index = ByteBuffer.allocateDirect(slots * SLOT);
+        this.mask = slots - 1;
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean reuse = channel.size() == capacity;
+        this.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (reuse && data.getInt(0) == FILE_MAGIC && data.getInt(4) == VERSION) {
+            rebuild();
+        } else {
+            data.putInt(0, FILE_MAGIC);
+            data.putInt(4, VERSION);
+            clear();
+        }
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key has no live record.
+     */
+    synchronized byte[] get(byte[] key) {
+        int slot = find(key, hash(key));
+        if (slot < 0) {
+            return null;
+        }
+        int offset = index.getInt(slot * SLOT + 4);
+        if (isExpired(offset, System.currentTimeMillis())) {
+            kill(slot, offset);
+            return null;
+        }
+        byte[] value = new byte[data.getInt(offset + 16)];
+        ByteBuffer source = data.duplicate();
+        source.position(offset + RECORD_HEADER + data.getInt(offset + 12));
+        source.get(value);
+        return value;
+    }
+
+    /**
+     * Writes the value of a key, replacing its previous value.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return If the value was written, false if the record is larger than
+     *         the file.
+     */
+    synchronized boolean put(byte[] key, byte[] value) {
+        int length = RECORD_HEADER + key.length + value.length;
+        if ((long) length > capacity - FILE_HEADER - 4) {
+            return false;
+        }
+        int h = hash(key);
+        int slot = find(key, h);
+        if (slot >= 0) {
+            kill(slot, index.getInt(slot * SLOT + 4));
+        }
+        while (count >= maxEntries) {
+            dropOldest();
+        }
+        if ((long) writePos + length + 4 > capacity) {
+            compact(length);
+        }
+        int offset = writePos;
+        data.putLong(offset + 4, System.currentTimeMillis());
+        data.putInt(offset + 12, key.length);
+        data.putInt(offset + 16, value.length);
+        ByteBuffer target = data.duplicate();
+        target.position(offset + RECORD_HEADER);
+        target.put(key);
+        target.put(value);
+        writePos += length;
+        data.putInt(writePos, 0);
+        // The magic number is written last, so a partly written record ends the file when it is rebuilt
+        data.putInt(offset, LIVE);
+        insert(h, offset);
+        return true;
+    }
+
+    /**
+     * Removes the record of a key.
+     *
+     * @param key The key.
+     */
+    synchronized void remove(byte[] key) {
+        int slot = find(key, hash(key));
+        if (slot >= 0) {
+            kill(slot, index.getInt(slot * SLOT + 4));
+        }
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i <= mask; i++) {
+            index.putLong(i * SLOT, 0);
+        }
+        count = 0;
+        liveBytes = 0;
+        head = FILE_HEADER;
+        writePos = FILE_HEADER;
+        data.putInt(FILE_HEADER, 0);
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Writes the changes to the file to the disk.
+     */
+    synchronized void flush() {
+        data.force();
+    }
+
+    synchronized void close() throws IOException {
+        data.force();
+        channel.close();
+    }
+
+    private void rebuild() {
+        long now = System.currentTimeMillis();
+        int pos = FILE_HEADER;
+        while (pos + RECORD_HEADER + 4 <= capacity) {
+            writePos = pos;
+            int magic = data.getInt(pos);
+            if (magic != LIVE && magic != DEAD) {
+                break;
+            }
+            int keyLength = data.getInt(pos + 12);
+            int valueLength = data.getInt(pos + 16);
+            if (keyLength < 0 || valueLength < 0 || (long) pos + RECORD_HEADER + keyLength + valueLength + 4 > capacity) {
+                break;
+            }
+            int length = RECORD_HEADER + keyLength + valueLength;
+            if (magic == LIVE) {
+                if (isExpired(pos, now)) {
+                    data.putInt(pos, DEAD);
+                } else {
+                    byte[] key = new byte[keyLength];
+                    ByteBuffer source = data.duplicate();
+                    source.position(pos + RECORD_HEADER);
+                    source.get(key);
+                    int h = hash(key);
+                    int slot = find(key, h);
+                    if (slot >= 0) {
+                        kill(slot, index.getInt(slot * SLOT + 4));
+                    }
+                    while (count >= maxEntries) {
+                        dropOldest();
+                    }
+                    insert(h, pos);
+                }
+            }
+            pos += length;
+        }
+        writePos = pos;
+        data.putInt(writePos, 0);
+    }
+
+    /**
+     * Moves the live records to the start of the file, dropping the oldest
+     * records until there is room for a record of the given length.
+     */
+    private void compact(int needed) {
+        while (liveBytes + needed + 4 > capacity - FILE_HEADER) {
+            dropOldest();
+        }
+        int pos = FILE_HEADER;
+        int target = FILE_HEADER;
+        while (pos < writePos) {
+            int length = RECORD_HEADER + data.getInt(pos + 12) + data.getInt(pos + 16);
+            if (data.getInt(pos) == LIVE) {
+                if (target != pos) {
+                    int slot = slotOf(pos);
+                    byte[] record = new byte[length];
+                    ByteBuffer source = data.duplicate();
+                    source.position(pos);
+                    source.get(record);
+                    ByteBuffer dest = data.duplicate();
+                    dest.position(target);
+                    dest.put(record);
+                    index.putInt(slot * SLOT + 4, target);
+                }
+                target += length;
+            }
+            pos += length;
+        }
+        head = FILE_HEADER;
+        writePos = target;
+        data.putInt(writePos, 0);
+    }
+
+    /**
+     * Removes the oldest live record.
+     */
+    private void dropOldest() {
+        while (head < writePos) {
+            int offset = head;
+            head += RECORD_HEADER + data.getInt(offset + 12) + data.getInt(offset + 16);
+            if (data.getInt(offset) == LIVE) {
+                kill(slotOf(offset), offset);
+                return;
+            }
+        }
+    }
+
+    private void kill(int slot, int offset) {
+        data.putInt(offset, DEAD);
+        count--;
+        liveBytes -= RECORD_HEADER + data.getInt(offset + 12) + data.getInt(offset + 16);
+        delete(slot);
+    }
+
+    private boolean isExpired(int offset, long now) {
+        return now - data.getLong(offset + 4) >= ttl;
+    }
+
+    private void insert(int h, int offset) {
+        int slot = h & mask;
+        while (index.getInt(slot * SLOT + 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt(slot * SLOT, h);
+        index.putInt(slot * SLOT + 4, offset);
+        count++;
+        liveBytes += RECORD_HEADER + data.getInt(offset + 12) + data.getInt(offset + 16);
+    }
+
+    /**
+     * Finds the index slot of a key.
+     *
+     * @return The slot, or -1 if the key is not indexed.
+     */
+    private int find(byte[] key, int h) {
+        int slot = h & mask;
+        int offset;
+        while ((offset = index.getInt(slot * SLOT + 4)) != 0) {
+            if (index.getInt(slot * SLOT) == h && keyEquals(offset, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the index slot of a live record.
+     */
+    private int slotOf(int offset) {
+        int length = data.getInt(offset + 12);
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + data.get(offset + RECORD_HEADER + i);
+        }
+        int slot = mix(h) & mask;
+        while (index.getInt(slot * SLOT + 4) != offset) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        if (data.getInt(offset + 12) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data.get(offset + RECORD_HEADER + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Empties a slot and shifts back the slots after it which would no longer
+     * be found.
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (index.getInt(next * SLOT + 4) != 0) {
+            int home = index.getInt(next * SLOT) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                index.putLong(gap * SLOT, index.getLong(next * SLOT));
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index.putLong(gap * SLOT, 0);
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * Probes a database in the background and keeps its last known state, so
+ * callers do not have to test the connection themselves. While the database
+ * is unavailable the SqlManager fails its calls immediately instead of
+ * letting every caller wait for a connection timeout. Calls succeed again as
+ * soon as a probe reaches the database.
+ */
+public class HealthMonitor {
+
+    /**
+     * The amount of consecutive connection failures after which the database
+     * is considered unavailable without waiting for the next probe.
+     */
+    public static final int FAILURE_THRESHOLD = 3;
+
+    private Logger logger;
+    private DataSource dataSource;
+
+    private volatile boolean healthy = true;
+    private volatile String reason = "";
+    private volatile long lastProbe = 0;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ScheduledExecutorService executor;
+
+    HealthMonitor(Logger logger, DataSource dataSource, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.dataSource = dataSource;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("utils-sql-health-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.scheduleWithFixedDelay(this::probe, 0, interval, unit);
+    }
+
+    /**
+     * Gets if the database was reachable at the last probe.
+     *
+     * @return If the database is available.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Gets the time of the last probe.
+     *
+     * @return The time in milliseconds since the epoch, or 0 if the database
+     *         has not been probed yet.
+     */
+    public long getLastProbeTime() {
+        return lastProbe;
+    }
+
+    /**
+     * Gets the amount of calls which failed immediately because the database
+     * was unavailable.
+     *
+     * @return The amount of rejected calls.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Probes the database now instead of waiting for the next scheduled
+     * probe.
+     *
+     * @return If the database is available.
+     */
+    public boolean probe() {
+        try (Connection con = dataSource.getConnection()) {
+            if (con.isValid(5)) {
+                markHealthy();
+            } else {
+                markUnhealthy("the connection is not valid");
+            }
+        } catch (SQLException | RuntimeException e) {
+            // A runtime exception from the pool would otherwise end the scheduled probes
+            markUnhealthy(e.getMessage());
+        }
+        lastProbe = System.currentTimeMillis();
+        return healthy;
+    }
+
+    /**
+     * Fails fast if the database is unavailable.
+     *
+     * @throws DatabaseUnavailableException If the database is unavailable.
+     */
+    void checkAvailable() throws DatabaseUnavailableException {
+        if (!healthy) {
+            rejected.incrementAndGet();
+            throw new DatabaseUnavailableException(reason);
+        }
+    }
+
+    /**
+     * Reports that a connection could not be acquired.
+     *
+     * @param e The cause.
+     */
+    void reportFailure(SQLException e) {
+        if (failures.incrementAndGet() >= FAILURE_THRESHOLD) {
+            markUnhealthy(e.getMessage());
+        }
+    }
+
+    /**
+     * Reports that a connection was acquired.
+     */
+    void reportSuccess() {
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void markHealthy() {
+        failures.set(0);
+        if (!healthy) {
+            logger.info("The database is available again.");
+        }
+        healthy = true;
+    }
+
+    private void markUnhealthy(String reason) {
+        this.reason = reason;
+        if (healthy) {
+            logger.error("The database is unavailable, failing calls until it recovers: " + reason);
+        }
+        healthy = false;
+    }
+}
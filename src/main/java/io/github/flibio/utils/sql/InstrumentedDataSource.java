@@ -0,0 +1,203 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the data source of a connection pool to measure how long connections
+ * take to acquire and how long they are held, and to report connections
+ * which are held past a leak threshold.
+ */
+public class InstrumentedDataSource implements DataSource {
+
+    private static ScheduledExecutorService leakExecutor;
+
+    private DataSource delegate;
+    private Logger logger;
+    private volatile long leakThreshold = 0;
+
+    private ScheduledFuture<?> leakCheck;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalAcquireTime = new AtomicLong();
+    private final AtomicLong maxAcquireTime = new AtomicLong();
+    private final AtomicLong releaseCount = new AtomicLong();
+    private final AtomicLong totalHoldTime = new AtomicLong();
+    private final AtomicLong maxHoldTime = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    InstrumentedDataSource(DataSource delegate, Logger logger) {
+        this.delegate = delegate;
+        this.logger = logger;
+    }
+
+    /**
+     * Sets how long a connection may be held before it is reported as a leak
+     * along with the stack trace of the code which acquired it. Recording the
+     * stack traces has a small cost on every acquisition.
+     *
+     * @param time The threshold. 0 to disable leak detection.
+     * @param unit The unit of the threshold.
+     */
+    public synchronized void setLeakThreshold(long time, TimeUnit unit) {
+        this.leakThreshold = unit.toNanos(time);
+        if (leakThreshold > 0 && leakCheck == null) {
+            leakCheck = getLeakExecutor().scheduleWithFixedDelay(this::checkLeaks, 1, 1, TimeUnit.SECONDS);
+        } else if (leakThreshold <= 0 && leakCheck != null) {
+            leakCheck.cancel(false);
+            leakCheck = null;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the pool.
+     *
+     * @return The metrics.
+     */
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(acquireCount.get(), totalAcquireTime.get(), maxAcquireTime.get(), releaseCount.get(), totalHoldTime.get(),
+                maxHoldTime.get(), leakCount.get(), leases.size(), poolStat("getActiveConnections"), poolStat("getIdleConnections"),
+                poolStat("getThreadsAwaitingConnection"));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        return track(delegate.getConnection(), start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        return track(delegate.getConnection(username, password), start);
+    }
+
+    private Connection track(Connection con, long start) {
+        long acquired = System.nanoTime();
+        long acquireTime = acquired - start;
+        acquireCount.incrementAndGet();
+        totalAcquireTime.addAndGet(acquireTime);
+        maxAcquireTime.accumulateAndGet(acquireTime, Math::max);
+
+        Lease lease = new Lease(acquired, (leakThreshold > 0) ? new Throwable("Connection acquired here") : null);
+        leases.add(lease);
+        return ConnectionHandles.onClose(con, () -> {
+            leases.remove(lease);
+            long holdTime = System.nanoTime() - lease.acquired;
+            releaseCount.incrementAndGet();
+            totalHoldTime.addAndGet(holdTime);
+            maxHoldTime.accumulateAndGet(holdTime, Math::max);
+        });
+    }
+
+    private void checkLeaks() {
+        long threshold = leakThreshold;
+        if (threshold <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Lease lease : leases) {
+            if (!lease.reported && now - lease.acquired > threshold) {
+                lease.reported = true;
+                leakCount.incrementAndGet();
+                logger.warn("Connection held for " + TimeUnit.NANOSECONDS.toMillis(now - lease.acquired) + "ms, it may have leaked.",
+                        lease.origin);
+            }
+        }
+    }
+
+    private int poolStat(String name) {
+        // Sponge pools connections with HikariCP, which reports its state through an MXBean
+        try {
+            Object pool = delegate.getClass().getMethod("getHikariPoolMXBean").invoke(delegate);
+            if (pool == null) {
+                return -1;
+            }
+            for (Class<?> type : pool.getClass().getInterfaces()) {
+                if (type.getSimpleName().equals("HikariPoolMXBean")) {
+                    Method method = type.getMethod(name);
+                    return (Integer) method.invoke(pool);
+                }
+            }
+            return -1;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getLeakExecutor() {
+        if (leakExecutor == null) {
+            leakExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("utils-sql-leak-detector-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return leakExecutor;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    private static class Lease {
+
+        private long acquired;
+        private Throwable origin;
+        private volatile boolean reported;
+
+        private Lease(long acquired, Throwable origin) {
+            this.acquired = acquired;
+            this.origin = origin;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.util.Optional;
+
+/**
+ * A message that a key of a cache changed, sent to the other servers through
+ * an {@link InvalidationBus}.
+ */
+public class Invalidation {
+
+    private String origin;
+    private String cache;
+    private String key;
+
+    private Invalidation(String origin, String cache, String key) {
+        this.origin = origin;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    /**
+     * Creates a new Invalidation.
+     *
+     * @param origin The id of the bus which published the invalidation.
+     * @param cache The name of the cache.
+     * @param key The changed key, or null if every key changed.
+     * @return The new Invalidation.
+     */
+    public static Invalidation of(String origin, String cache, String key) {
+        return new Invalidation(origin, cache, key);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the changed key.
+     *
+     * @return The key, or empty if every key of the cache changed.
+     */
+    public Optional<String> getKey() {
+        return Optional.ofNullable(key);
+    }
+}
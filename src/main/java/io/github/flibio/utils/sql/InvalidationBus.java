@@ -0,0 +1,316 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps the caches of several servers which share a database consistent.
+ * When a server changes a key it invalidates it on the bus, which evicts the
+ * key from the local caches immediately and from the caches of the other
+ * servers at their next poll.
+ *
+ * <p>Invalidations are collected and published in one batch per interval,
+ * and repeated invalidations of the same key within an interval are sent
+ * once. If the transport is unavailable the invalidations are kept and
+ * published later; a cache with more than {@link #MAX_PENDING} waiting keys
+ * is invalidated as a whole instead.</p>
+ */
+public class InvalidationBus {
+
+    /**
+     * The maximum amount of waiting keys of a cache.
+     */
+    public static final int MAX_PENDING = 10000;
+
+    /**
+     * The maximum length of the name of a cache.
+     */
+    public static final int MAX_CACHE_NAME_LENGTH = 64;
+
+    private Logger logger;
+    private InvalidationTransport transport;
+    private String id = UUID.randomUUID().toString();
+
+    private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    // A cache mapped to null is invalidated as a whole
+    private Map<String, Set<String>> pending = new LinkedHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final ScheduledExecutorService executor;
+
+    private InvalidationBus(Logger logger, InvalidationTransport transport, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.transport = transport;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("utils-sql-invalidation-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.scheduleWithFixedDelay(this::exchange, interval, interval, unit);
+    }
+
+    /**
+     * Creates a new InvalidationBus which exchanges invalidations through a
+     * log table in the database of a manager.
+     *
+     * @param manager The manager of the shared database.
+     * @param interval The time between publishing and polling.
+     * @param unit The unit of the interval.
+     * @return The new InvalidationBus.
+     */
+    public static InvalidationBus create(SqlManager manager, long interval, TimeUnit unit) {
+        return create(manager.getLogger(), SqlInvalidationTransport.create(manager), interval, unit);
+    }
+
+    /**
+     * Creates a new InvalidationBus.
+     *
+     * @param logger The logger.
+     * @param transport The transport which carries the invalidations.
+     * @param interval The time between publishing and polling.
+     * @param unit The unit of the interval.
+     * @return The new InvalidationBus.
+     */
+    public static InvalidationBus create(Logger logger, InvalidationTransport transport, long interval, TimeUnit unit) {
+        return new InvalidationBus(logger, transport, interval, unit);
+    }
+
+    /**
+     * Subscribes a cache to the invalidations of a name.
+     *
+     * @param <T> The type of the keys.
+     * @param cache The name of the cache, the same on every server.
+     * @param manager The cache.
+     * @param keyParser Converts a key back from its {@link Object#toString()}.
+     */
+    public <T> void subscribe(String cache, CacheManager<T, ?> manager, Function<String, T> keyParser) {
+        subscribe(cache, key -> manager.invalidate(keyParser.apply(key)), manager::clear);
+    }
+
+    /**
+     * Subscribes a cache to the invalidations of a name.
+     *
+     * @param cache The name of the cache, the same on every server.
+     * @param manager The cache.
+     */
+    public void subscribe(String cache, UUIDCacheManager<?> manager) {
+        subscribe(cache, key -> manager.invalidate(UUID.fromString(key)), manager::clear);
+    }
+
+    /**
+     * Subscribes to the invalidations of a name.
+     *
+     * @param cache The name of the cache, the same on every server.
+     * @param onKey Evicts a key, given as its {@link Object#toString()}.
+     * @param onAll Evicts every key.
+     * @throws IllegalArgumentException If the name is longer than
+     *         {@value #MAX_CACHE_NAME_LENGTH} characters.
+     */
+    public void subscribe(String cache, Consumer<String> onKey, Runnable onAll) {
+        checkName(cache);
+        subscriptions.computeIfAbsent(cache, c -> new CopyOnWriteArrayList<>()).add(new Subscription(onKey, onAll));
+    }
+
+    /**
+     * Invalidates a key on every server. Intended to be called after the
+     * value of the key was written to the database.
+     *
+     * @param cache The name of the cache.
+     * @param key The key. Its {@link Object#toString()} is sent to the other
+     *        servers.
+     * @throws IllegalArgumentException If the name is longer than
+     *         {@value #MAX_CACHE_NAME_LENGTH} characters.
+     */
+    public void invalidate(String cache, Object key) {
+        checkName(cache);
+        String encoded = key.toString();
+        deliver(cache, encoded);
+        synchronized (this) {
+            if (pending.containsKey(cache) && pending.get(cache) == null) {
+                return;
+            }
+            Set<String> keys = pending.computeIfAbsent(cache, c -> new LinkedHashSet<>());
+            keys.add(encoded);
+            if (keys.size() > MAX_PENDING) {
+                pending.put(cache, null);
+            }
+        }
+    }
+
+    /**
+     * Invalidates every key of a cache on every server.
+     *
+     * @param cache The name of the cache.
+     * @throws IllegalArgumentException If the name is longer than
+     *         {@value #MAX_CACHE_NAME_LENGTH} characters.
+     */
+    public void invalidateAll(String cache) {
+        checkName(cache);
+        deliver(cache, null);
+        synchronized (this) {
+            pending.put(cache, null);
+        }
+    }
+
+    private static void checkName(String cache) {
+        if (cache.length() > MAX_CACHE_NAME_LENGTH) {
+            throw new IllegalArgumentException("The cache name " + cache + " is longer than " + MAX_CACHE_NAME_LENGTH + " characters");
+        }
+    }
+
+    /**
+     * Publishes the waiting invalidations now instead of waiting for the
+     * next interval.
+     *
+     * @return If the invalidations were published.
+     */
+    public boolean flush() {
+        Map<String, Set<String>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        List<Invalidation> invalidations = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+            if (entry.getValue() == null) {
+                invalidations.add(Invalidation.of(id, entry.getKey(), null));
+            } else {
+                for (String key : entry.getValue()) {
+                    invalidations.add(Invalidation.of(id, entry.getKey(), key));
+                }
+            }
+        }
+        if (transport.publish(invalidations)) {
+            published.addAndGet(invalidations.size());
+            return true;
+        }
+        synchronized (this) {
+            // Keep the failed batch ahead of the invalidations queued meanwhile
+            for (Map.Entry<String, Set<String>> entry : pending.entrySet()) {
+                String cache = entry.getKey();
+                if (batch.containsKey(cache) && batch.get(cache) == null) {
+                    continue;
+                }
+                if (entry.getValue() == null) {
+                    batch.put(cache, null);
+                } else if (!batch.containsKey(cache)) {
+                    batch.put(cache, entry.getValue());
+                } else {
+                    Set<String> keys = batch.get(cache);
+                    keys.addAll(entry.getValue());
+                    if (keys.size() > MAX_PENDING) {
+                        batch.put(cache, null);
+                    }
+                }
+            }
+            pending = batch;
+        }
+        return false;
+    }
+
+    /**
+     * Applies the invalidations published by other servers now instead of
+     * waiting for the next interval.
+     */
+    public void poll() {
+        for (Invalidation invalidation : transport.poll()) {
+            if (!invalidation.getOrigin().equals(id)) {
+                received.incrementAndGet();
+                deliver(invalidation.getCache(), invalidation.getKey().orElse(null));
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of invalidations sent to other servers.
+     *
+     * @return The amount of invalidations.
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * Gets the amount of invalidations received from other servers.
+     *
+     * @return The amount of invalidations.
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Publishes the waiting invalidations and stops the bus.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        transport.close();
+    }
+
+    private void exchange() {
+        try {
+            flush();
+            poll();
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.error(e.getMessage());
+        }
+    }
+
+    private void deliver(String cache, String key) {
+        List<Subscription> subscribers = subscriptions.get(cache);
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscription subscription : subscribers) {
+            try {
+                if (key == null) {
+                    subscription.onAll.run();
+                } else {
+                    subscription.onKey.accept(key);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to invalidate " + cache + ((key == null) ? "" : " key " + key) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Subscription {
+
+        private Consumer<String> onKey;
+        private Runnable onAll;
+
+        private Subscription(Consumer<String> onKey, Runnable onAll) {
+            this.onKey = onKey;
+            this.onAll = onAll;
+        }
+    }
+}
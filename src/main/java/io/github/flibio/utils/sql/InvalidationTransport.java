@@ -0,0 +1,38 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.util.List;
+
+/**
+ * Carries invalidations between the servers which share a database. The
+ * default transport is a table, see {@link SqlInvalidationTransport}; other
+ * transports such as a message broker can be plugged into an
+ * {@link InvalidationBus} by implementing this interface.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Sends a batch of invalidations to every server.
+     *
+     * @param invalidations The invalidations.
+     * @return If the invalidations were sent.
+     */
+    boolean publish(List<Invalidation> invalidations);
+
+    /**
+     * Receives the invalidations which were published since the last poll,
+     * including those published by this server.
+     *
+     * @return The invalidations, in the order they were published.
+     */
+    List<Invalidation> poll();
+
+    /**
+     * Releases the resources of the transport.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache which loads missing entries itself. Concurrent requests for the
+ * same missing key share a single load, also when they are loaded in bulk,
+ * and entries can be refreshed in the background before they expire so hot
+ * keys never miss.
+ *
+ * @param <T> The type of the keys.
+ * @param <K> The type of the entries.
+ */
+public class LoadingCacheManager<T, K> extends CacheManager<T, K> {
+
+    private static Executor refreshExecutor;
+
+    private LoadingCache<T, K> cache;
+    private Function<Set<T>, Map<T, K>> bulkLoader;
+
+    private LoadingCacheManager(Logger logger, CacheBuilder<Object, Object> builder, CacheLoader<T, K> loader,
+            Function<Set<T>, Map<T, K>> bulkLoader) {
+        super(logger, builder, loader);
+        this.cache = (LoadingCache<T, K>) getCache();
+        this.bulkLoader = bulkLoader;
+    }
+
+    /**
+     * Creates a new LoadingCacheManager.
+     *
+     * @param logger The logger.
+     * @param maxSize The maximum amount of entries.
+     * @param minutes The minutes after which an entry expires.
+     * @param refreshMinutes The minutes after which an entry is reloaded in
+     *        the background when it is requested. 0 to disable refreshing.
+     * @param loader Loads the entry of a key, usually with a
+     *        {@link SqlManager} query. Returns null if the key has no entry.
+     * @return The new LoadingCacheManager.
+     */
+    public static <T, K> LoadingCacheManager<T, K> create(Logger logger, long maxSize, long minutes, long refreshMinutes,
+            Function<T, K> loader) {
+        return create(logger, maxSize, minutes, refreshMinutes, loader, null);
+    }
+
+    /**
+     * Creates a new LoadingCacheManager.
+     *
+     * @param logger The logger.
+     * @param maxSize The maximum amount of entries.
+     * @param minutes The minutes after which an entry expires.
+     * @param refreshMinutes The minutes after which an entry is reloaded in
+     *        the background when it is requested. 0 to disable refreshing.
+     * @param loader Loads the entry of a key, usually with a
+     *        {@link SqlManager} query. Returns null if the key has no entry.
+     * @param bulkLoader Loads the entries of many keys at once, usually with
+     *        a single {@link SqlManager} query. Keys without an entry are left
+     *        out of the returned map.
+     * @return The new LoadingCacheManager.
+     */
+    public static <T, K> LoadingCacheManager<T, K> create(Logger logger, long maxSize, long minutes, long refreshMinutes,
+            Function<T, K> loader, Function<Set<T>, Map<T, K>> bulkLoader) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(minutes, TimeUnit.MINUTES);
+        if (refreshMinutes > 0) {
+            builder.refreshAfterWrite(refreshMinutes, TimeUnit.MINUTES);
+        }
+        CacheLoader<T, K> cacheLoader = CacheLoader.asyncReloading(new Loader<>(loader, bulkLoader), getRefreshExecutor());
+        return new LoadingCacheManager<>(logger, builder, cacheLoader, bulkLoader);
+    }
+
+    /**
+     * Gets the entry of a key, loading it if it is not cached. Recommended to
+     * run in an async thread.
+     *
+     * @param key The key.
+     * @return The entry, if the key has one.
+     */
+    public Optional<K> get(T key) {
+        try {
+            return Optional.of(cache.get(key));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            // The loader found no entry for the key
+            return Optional.empty();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            getLogger().error("Failed to load cache entry: " + e.getCause().getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the entries of many keys. Keys which are not cached are loaded with
+     * the bulk loader in one call, or one by one if there is no bulk loader.
+     * Recommended to run in an async thread.
+     *
+     * @param keys The keys.
+     * @return The entries of the keys which have one.
+     */
+    public Map<T, K> getAll(Iterable<? extends T> keys) {
+        List<T> list = new ArrayList<>();
+        for (T key : keys) {
+            list.add(key);
+        }
+        if (bulkLoader == null) {
+            Map<T, K> entries = new LinkedHashMap<>();
+            for (T key : list) {
+                if (!entries.containsKey(key)) {
+                    get(key).ifPresent(entry -> entries.put(key, entry));
+                }
+            }
+            return entries;
+        }
+        try {
+            return new LinkedHashMap<>(cache.getAll(list));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            // Some keys have no entry, the entries which were found are cached
+            return new LinkedHashMap<>(cache.getAllPresent(list));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            getLogger().error("Failed to load cache entries: " + e.getCause().getMessage());
+            return new LinkedHashMap<>(cache.getAllPresent(list));
+        }
+    }
+
+    /**
+     * Reloads the entry of a key in the background. The old entry is returned
+     * until the new one is loaded.
+     *
+     * @param key The key.
+     */
+    public void refresh(T key) {
+        cache.refresh(key);
+    }
+
+    /**
+     * Loads single keys with the loader and many keys with the bulk loader.
+     * A key which is already being loaded in bulk by another thread is
+     * waited for instead of being loaded again.
+     */
+    private static class Loader<T, K> extends CacheLoader<T, K> {
+
+        private Function<T, K> loader;
+        private Function<Set<T>, Map<T, K>> bulkLoader;
+        private final ConcurrentMap<T, CompletableFuture<K>> loading = new ConcurrentHashMap<>();
+
+        private Loader(Function<T, K> loader, Function<Set<T>, Map<T, K>> bulkLoader) {
+            this.loader = loader;
+            this.bulkLoader = bulkLoader;
+        }
+
+        @Override
+        public K load(T key) {
+            return loader.apply(key);
+        }
+
+        @Override
+        public Map<T, K> loadAll(Iterable<? extends T> keys) throws Exception {
+            if (bulkLoader == null) {
+                return super.loadAll(keys);
+            }
+            Map<T, CompletableFuture<K>> claimed = new LinkedHashMap<>();
+            Map<T, CompletableFuture<K>> waiting = new LinkedHashMap<>();
+            for (T key : keys) {
+                CompletableFuture<K> future = new CompletableFuture<>();
+                CompletableFuture<K> other = loading.putIfAbsent(key, future);
+                if (other == null) {
+                    claimed.put(key, future);
+                } else {
+                    waiting.put(key, other);
+                }
+            }
+            Map<T, K> entries = new LinkedHashMap<>();
+            try {
+                // The claimed keys are completed before waiting for other threads, so two loads cannot wait for each other
+                Map<T, K> loaded = claimed.isEmpty() ? Collections.emptyMap() : bulkLoader.apply(Collections.unmodifiableSet(claimed.keySet()));
+                for (Map.Entry<T, CompletableFuture<K>> claim : claimed.entrySet()) {
+                    K entry = loaded.get(claim.getKey());
+                    if (entry != null) {
+                        entries.put(claim.getKey(), entry);
+                    }
+                    claim.getValue().complete(entry);
+                }
+            } catch (RuntimeException e) {
+                for (CompletableFuture<K> future : claimed.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<T, CompletableFuture<K>> claim : claimed.entrySet()) {
+                    loading.remove(claim.getKey(), claim.getValue());
+                }
+            }
+            for (Map.Entry<T, CompletableFuture<K>> wait : waiting.entrySet()) {
+                K entry = wait.getValue().join();
+                if (entry != null) {
+                    entries.put(wait.getKey(), entry);
+                }
+            }
+            return entries;
+        }
+    }
+
+    private static synchronized Executor getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+                    .setNameFormat("utils-cache-refresh-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return refreshExecutor;
+    }
+}
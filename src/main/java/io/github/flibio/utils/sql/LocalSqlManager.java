@@ -4,18 +4,66 @@
 
 package io.github.flibio.utils.sql;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.plugin.Plugin;
+import org.spongepowered.api.service.sql.SqlService;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
 
 public class LocalSqlManager extends SqlManager {
 
+    /**
+     * The suffix of the snapshot files of in-memory databases.
+     */
+    public static final String SNAPSHOT_SUFFIX = ".snapshot.sql.gz";
+
+    private Path snapshot;
+    private long snapshotInterval = 0;
+    private ScheduledExecutorService snapshotExecutor;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private DataSource trackedDataSource;
+
     protected LocalSqlManager(Logger logger, String folderName, String file) {
         super(logger, "jdbc:h2:" + appendSlash(folderName) + file);
     }
 
+    /**
+     * Manages an in-memory database which is written to a snapshot file
+     * periodically and loaded from it when the manager is initialized.
+     *
+     * @param logger The logger.
+     * @param folderName The folder of the snapshot.
+     * @param file The name of the database.
+     * @param interval The time between snapshots. 0 to only write a snapshot
+     *        when the manager is closed.
+     * @param unit The unit of the interval.
+     */
+    protected LocalSqlManager(Logger logger, String folderName, String file, long interval, TimeUnit unit) {
+        super(logger, "jdbc:h2:mem:" + (appendSlash(folderName) + file).replaceAll("[^A-Za-z0-9_]", "_") + ";DB_CLOSE_DELAY=-1");
+        this.snapshot = Paths.get(appendSlash(folderName) + file + SNAPSHOT_SUFFIX);
+        this.snapshotInterval = unit.toMillis(interval);
+    }
+
+    protected LocalSqlManager(Logger logger, String folderName, String file, SqlService sql) {
+        super(logger, "jdbc:h2:" + appendSlash(folderName) + file, sql);
+    }
+
     /**
      * Creates a new LocalSqlManager instance. Uses H2 database.
      * 
@@ -51,6 +99,190 @@ public class LocalSqlManager extends SqlManager {
         }
     }
 
+    /**
+     * Uses the MERGE statement of H2, which updates the row with the same key
+     * columns or inserts a new row.
+     */
+    @Override
+    protected String getUpsertSql(String table, String[] keyColumns, String[] columns) {
+        return "MERGE INTO " + table + " (" + identifiers(columns) + ") KEY (" + identifiers(keyColumns) + ") VALUES ("
+                + placeholders(columns.length) + ")";
+    }
+
+    /**
+     * Creates a new LocalSqlManager instance which keeps the database in
+     * memory. Writes do not touch the disk; instead the whole database is
+     * written to a snapshot file in the background on an interval and when
+     * the manager is closed, so changes since the last snapshot are lost if
+     * the server crashes. Uses H2 database.
+     *
+     * @param plugin An instance of the main plugin class.
+     * @param file The file associated with the data manager.
+     * @param interval The time between snapshots. 0 to only write a snapshot
+     *        when the manager is closed.
+     * @param unit The unit of the interval.
+     * @return The new LocalSqlManager instance, if the plugin class is valid.
+     */
+    public static Optional<LocalSqlManager> createMemoryInstance(Object plugin, String file, long interval, TimeUnit unit) {
+        if (plugin.getClass().isAnnotationPresent(Plugin.class)) {
+            Plugin annotation = plugin.getClass().getAnnotation(Plugin.class);
+            Logger logger = Sponge.getGame().getPluginManager().getPlugin(annotation.id()).get().getLogger();
+            return Optional.of(new LocalSqlManager(logger, "./config/" + annotation.name().toLowerCase().replaceAll(" ", "_"), file, interval, unit));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Loads the snapshot of an in-memory database and starts writing
+     * snapshots.
+     */
+    @Override
+    public boolean initialTestConnection() {
+        if (!super.initialTestConnection()) {
+            return false;
+        }
+        if (snapshot == null || snapshotExecutor != null) {
+            return true;
+        }
+        // A database which is still in memory, for example after a plugin reload, is newer than its snapshot
+        boolean empty = !queryExists("SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC'");
+        if (empty && Files.exists(snapshot) && !runScript("RUNSCRIPT FROM '" + quote(snapshot) + "' COMPRESSION GZIP")) {
+            getLogger().error("Failed to load the snapshot " + snapshot + ".");
+            return false;
+        }
+        dirty.set(false);
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("utils-sql-snapshot-%d")
+                .setDaemon(true)
+                .build());
+        if (snapshotInterval > 0) {
+            snapshotExecutor.scheduleWithFixedDelay(this::snapshot, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the database is kept in memory and written to snapshots.
+     *
+     * @return If the database is in memory.
+     */
+    public boolean isInMemory() {
+        return snapshot != null;
+    }
+
+    /**
+     * Writes a snapshot of an in-memory database now, if it changed since the
+     * last snapshot. The snapshot is written to a temporary file which then
+     * replaces the previous snapshot, so a crash while writing leaves the
+     * previous snapshot intact.
+     *
+     * <p>The database counts as changed whenever a connection was borrowed or
+     * handed back since the last snapshot, including connections of
+     * {@link #getDataSource()}, so a write which commits while a snapshot is
+     * written is included in the next one.</p>
+     *
+     * @return If the snapshot is up to date.
+     */
+    public boolean snapshot() {
+        return writeSnapshot(false);
+    }
+
+    /**
+     * Also stops writing snapshots and writes a final snapshot of an
+     * in-memory database, whether or not it changed. Should be called when
+     * the server stops.
+     *
+     * @return If the manager was closed cleanly and the final snapshot was
+     *         written.
+     */
+    @Override
+    public boolean close() {
+        ScheduledExecutorService executor = snapshotExecutor;
+        snapshotExecutor = null;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean written = writeSnapshot(true);
+        return super.close() && written;
+    }
+
+    /**
+     * Returns the datasource for custom queries. Connections of an in-memory
+     * database mark it as changed, so their writes are written to the next
+     * snapshot.
+     */
+    @Override
+    public synchronized DataSource getDataSource() {
+        DataSource dataSource = super.getDataSource();
+        if (snapshot == null || dataSource == null) {
+            return dataSource;
+        }
+        if (trackedDataSource == null) {
+            trackedDataSource = ConnectionHandles.onBorrowAndClose(dataSource, () -> dirty.set(true));
+        }
+        return trackedDataSource;
+    }
+
+    @Override
+    protected Connection getWriteConnection() throws SQLException {
+        if (snapshot == null) {
+            return super.getWriteConnection();
+        }
+        // Marked again when the connection is handed back, in case the write commits while a snapshot is written
+        dirty.set(true);
+        return ConnectionHandles.onClose(super.getWriteConnection(), () -> dirty.set(true));
+    }
+
+    private synchronized boolean writeSnapshot(boolean force) {
+        if (snapshot == null) {
+            return true;
+        }
+        if (!dirty.getAndSet(false) && !force) {
+            return true;
+        }
+        try {
+            Path parent = snapshot.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temporary = Files.createTempFile(parent, snapshot.getFileName().toString(), ".tmp");
+            try {
+                if (!runScript("SCRIPT TO '" + quote(temporary) + "' COMPRESSION GZIP")) {
+                    dirty.set(true);
+                    return false;
+                }
+                Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            dirty.set(true);
+            e.printStackTrace();
+            getLogger().error("Failed to write the snapshot " + snapshot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean runScript(String sql) {
+        try (Connection con = super.getWriteConnection(); Statement statement = con.createStatement()) {
+            statement.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            getLogger().error(e.getMessage());
+            return false;
+        }
+    }
+
+    private static String quote(Path path) {
+        return path.toAbsolutePath().toString().replace("'", "''");
+    }
+
     private static String appendSlash(String path) {
         // Append a slash if necessary
         if (!path.substring(path.length() - 1).equalsIgnoreCase("/")) {
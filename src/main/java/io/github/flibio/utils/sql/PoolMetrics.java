@@ -0,0 +1,143 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+/**
+ * The metrics of a connection pool at one point in time. Counts and times are
+ * totals since the pool was created. Times are in nanoseconds.
+ */
+public class PoolMetrics {
+
+    private long acquireCount;
+    private long totalAcquireTime;
+    private long maxAcquireTime;
+    private long releaseCount;
+    private long totalHoldTime;
+    private long maxHoldTime;
+    private long leakCount;
+    private int borrowed;
+    private int active;
+    private int idle;
+    private int awaiting;
+
+    PoolMetrics(long acquireCount, long totalAcquireTime, long maxAcquireTime, long releaseCount, long totalHoldTime, long maxHoldTime,
+            long leakCount, int borrowed, int active, int idle, int awaiting) {
+        this.acquireCount = acquireCount;
+        this.totalAcquireTime = totalAcquireTime;
+        this.maxAcquireTime = maxAcquireTime;
+        this.releaseCount = releaseCount;
+        this.totalHoldTime = totalHoldTime;
+        this.maxHoldTime = maxHoldTime;
+        this.leakCount = leakCount;
+        this.borrowed = borrowed;
+        this.active = active;
+        this.idle = idle;
+        this.awaiting = awaiting;
+    }
+
+    /**
+     * Gets the amount of connections acquired from the pool.
+     *
+     * @return The amount of acquired connections.
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * Gets the average time spent waiting for the pool to hand out a
+     * connection.
+     *
+     * @return The average acquire time, in nanoseconds.
+     */
+    public double getAverageAcquireTime() {
+        return (acquireCount == 0) ? 0 : (double) totalAcquireTime / acquireCount;
+    }
+
+    /**
+     * Gets the longest time spent waiting for the pool to hand out a
+     * connection.
+     *
+     * @return The maximum acquire time, in nanoseconds.
+     */
+    public long getMaxAcquireTime() {
+        return maxAcquireTime;
+    }
+
+    /**
+     * Gets the average time a connection was held before it was closed.
+     *
+     * @return The average hold time, in nanoseconds.
+     */
+    public double getAverageHoldTime() {
+        return (releaseCount == 0) ? 0 : (double) totalHoldTime / releaseCount;
+    }
+
+    /**
+     * Gets the longest time a connection was held before it was closed.
+     *
+     * @return The maximum hold time, in nanoseconds.
+     */
+    public long getMaxHoldTime() {
+        return maxHoldTime;
+    }
+
+    /**
+     * Gets the amount of connections which were held longer than the leak
+     * threshold.
+     *
+     * @return The amount of leaks.
+     */
+    public long getLeakCount() {
+        return leakCount;
+    }
+
+    /**
+     * Gets the amount of connections currently borrowed through this library,
+     * including by code using {@link SqlManager#getDataSource()}.
+     *
+     * @return The amount of borrowed connections.
+     */
+    public int getBorrowedCount() {
+        return borrowed;
+    }
+
+    /**
+     * Gets the amount of connections in use according to the pool.
+     *
+     * @return The amount of active connections, or -1 if the pool does not
+     *         report it.
+     */
+    public int getActiveCount() {
+        return active;
+    }
+
+    /**
+     * Gets the amount of open connections waiting to be borrowed.
+     *
+     * @return The amount of idle connections, or -1 if the pool does not
+     *         report it.
+     */
+    public int getIdleCount() {
+        return idle;
+    }
+
+    /**
+     * Gets the amount of threads waiting for a connection.
+     *
+     * @return The amount of waiting threads, or -1 if the pool does not
+     *         report it.
+     */
+    public int getAwaitingCount() {
+        return awaiting;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{borrowed=" + borrowed + ", active=" + active + ", idle=" + idle + ", awaiting=" + awaiting + ", averageAcquireTime="
+                + getAverageAcquireTime() + ", maxAcquireTime=" + maxAcquireTime + ", averageHoldTime=" + getAverageHoldTime() + ", maxHoldTime="
+                + maxHoldTime + ", leaks=" + leakCount + "}";
+    }
+}
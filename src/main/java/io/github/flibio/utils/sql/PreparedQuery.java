@@ -0,0 +1,72 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A registered query whose prepared statement is reused on every pooled
+ * connection. Created with
+ * {@link SqlManager#prepareQuery(String, Class, String)}.
+ *
+ * @param <T> The type of data the query retrieves.
+ */
+public class PreparedQuery<T> {
+
+    private SqlManager manager;
+    private String columnName;
+    private Class<T> type;
+    private String sql;
+
+    PreparedQuery(SqlManager manager, String columnName, Class<T> type, String sql) {
+        this.manager = manager;
+        this.columnName = columnName;
+        this.type = type;
+        this.sql = sql;
+    }
+
+    /**
+     * Gets the sql of the query.
+     *
+     * @return The sql.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Runs the query and retrieves the column's data of the first row.
+     *
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return The column's data, if it was found.
+     */
+    public Optional<T> query(Object... vars) {
+        return manager.queryType(true, columnName, type, sql, vars);
+    }
+
+    /**
+     * Runs the query and retrieves the column's data of every row.
+     *
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return The list of data.
+     */
+    public List<T> queryList(Object... vars) {
+        return manager.queryTypeList(true, columnName, type, sql, vars);
+    }
+
+    /**
+     * Runs the query and checks if a row exists.
+     *
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return If the row was found or not.
+     */
+    public boolean exists(Object... vars) {
+        return manager.queryExists(true, sql, vars);
+    }
+}
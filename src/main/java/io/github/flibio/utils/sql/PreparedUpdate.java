@@ -0,0 +1,54 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.util.List;
+
+/**
+ * A registered update whose prepared statement is reused on every pooled
+ * connection. Created with {@link SqlManager#prepareUpdate(String)}.
+ */
+public class PreparedUpdate {
+
+    private SqlManager manager;
+    private String sql;
+
+    PreparedUpdate(SqlManager manager, String sql) {
+        this.manager = manager;
+        this.sql = sql;
+    }
+
+    /**
+     * Gets the sql of the update.
+     *
+     * @return The sql.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Executes the update. Recommended to run in an async thread.
+     *
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return If the update was successful or not.
+     */
+    public boolean execute(Object... vars) {
+        return manager.executeUpdate(true, sql, vars);
+    }
+
+    /**
+     * Executes the update once for every set of variables in a single batch.
+     * Recommended to run in an async thread.
+     *
+     * @param rows The variables of each row.
+     * @return The update count of each row.
+     * @see SqlManager#executeBatch(String, List)
+     */
+    public int[] executeBatch(List<Object[]> rows) {
+        return manager.executeBatch(true, sql, rows);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Times the calls of a {@link SqlManager} per sql statement and logs calls
+ * which take longer than the slow query threshold.
+ */
+public class QueryMetrics {
+
+    /**
+     * The maximum amount of distinct statements tracked. Later statements
+     * are recorded under {@link #OTHER}.
+     */
+    public static final int MAX_STATEMENTS = 1000;
+
+    /**
+     * The statement under which calls are recorded once
+     * {@link #MAX_STATEMENTS} is reached.
+     */
+    public static final String OTHER = "<other>";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static volatile Thread mainThread;
+    private static volatile boolean spongeAbsent = false;
+
+    private Logger logger;
+    private volatile long slowThreshold = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+    private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+    QueryMetrics(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Sets how long a call may take before it is logged as a slow query.
+     * Defaults to 250 milliseconds.
+     *
+     * @param time The threshold. 0 to disable the slow query log.
+     * @param unit The unit of the threshold.
+     */
+    public void setSlowQueryThreshold(long time, TimeUnit unit) {
+        this.slowThreshold = unit.toNanos(time);
+    }
+
+    /**
+     * Takes a snapshot of the latencies of every statement, slowest total
+     * time first.
+     *
+     * @return The latencies of the statements.
+     */
+    public List<QueryStats> getStats() {
+        List<QueryStats> stats = new ArrayList<>();
+        for (Map.Entry<String, Statement> entry : statements.entrySet()) {
+            LatencyHistogram histogram = entry.getValue().histogram;
+            stats.add(new QueryStats(entry.getKey(), histogram.getCount(), entry.getValue().mainThread.get(), histogram.getTotal(),
+                    histogram.getPercentile(0.5), histogram.getPercentile(0.99), histogram.getMax()));
+        }
+        stats.sort(Comparator.comparingDouble((QueryStats s) -> s.getMean() * s.getCount()).reversed());
+        return stats;
+    }
+
+    /**
+     * Forgets all recorded latencies.
+     */
+    public void reset() {
+        statements.clear();
+    }
+
+    /**
+     * Records a call.
+     *
+     * @param sql The sql of the call.
+     * @param params The amount of bound parameters.
+     * @param start The {@link System#nanoTime()} at which the call started.
+     */
+    void record(String sql, int params, long start) {
+        long elapsed = System.nanoTime() - start;
+        boolean mainThread = isMainThread();
+        Statement statement = statements.get(normalize(sql));
+        if (statement == null) {
+            String key = (statements.size() < MAX_STATEMENTS) ? normalize(sql) : OTHER;
+            statement = statements.computeIfAbsent(key, k -> new Statement());
+        }
+        statement.histogram.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+        if (mainThread) {
+            statement.mainThread.incrementAndGet();
+        }
+        long threshold = slowThreshold;
+        if (threshold > 0 && elapsed >= threshold) {
+            logger.warn("Slow query (" + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, " + params + " parameters"
+                    + (mainThread ? ", on the main thread" : "") + ") from " + caller() + ": " + normalize(sql));
+        }
+    }
+
+    private String normalize(String sql) {
+        String cached = normalized.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("IN (?)");
+        result = WHITESPACE.matcher(result).replaceAll(" ").trim();
+        if (normalized.size() < MAX_STATEMENTS * 10) {
+            normalized.put(sql, result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if the current thread is the main thread. The main thread is
+     * remembered once it is found, and Sponge is not asked again once it is
+     * known to be absent, so recording a call does not throw an exception
+     * every time.
+     */
+    private static boolean isMainThread() {
+        Thread current = Thread.currentThread();
+        Thread main = mainThread;
+        if (main != null) {
+            return current == main;
+        }
+        if (spongeAbsent) {
+            return false;
+        }
+        try {
+            if (Sponge.isServerAvailable() && Sponge.getServer().isMainThread()) {
+                mainThread = current;
+                return true;
+            }
+            return false;
+        } catch (RuntimeException | NoClassDefFoundError e) {
+            // Sponge is not loaded, for example in benchmarks
+            spongeAbsent = true;
+            return false;
+        }
+    }
+
+    private static String caller() {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            String className = element.getClassName();
+            if (!className.startsWith(QueryMetrics.class.getPackage().getName() + ".") && !className.startsWith("java.")
+                    && !className.startsWith("sun.")) {
+                return element.toString();
+            }
+        }
+        return "unknown";
+    }
+
+    private static class Statement {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong mainThread = new AtomicLong();
+    }
+}
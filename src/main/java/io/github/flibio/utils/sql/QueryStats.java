@@ -0,0 +1,74 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+/**
+ * The latencies of one normalized sql statement at one point in time. Times
+ * are in microseconds.
+ */
+public class QueryStats {
+
+    private String sql;
+    private long count;
+    private long mainThreadCount;
+    private long total;
+    private long p50;
+    private long p99;
+    private long max;
+
+    QueryStats(String sql, long count, long mainThreadCount, long total, long p50, long p99, long max) {
+        this.sql = sql;
+        this.count = count;
+        this.mainThreadCount = mainThreadCount;
+        this.total = total;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * Gets the sql, with literals replaced by placeholders.
+     *
+     * @return The normalized sql.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the amount of calls made on the main server thread.
+     *
+     * @return The amount of calls on the main thread.
+     */
+    public long getMainThreadCount() {
+        return mainThreadCount;
+    }
+
+    public double getMean() {
+        return (count == 0) ? 0 : (double) total / count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryStats{sql=" + sql + ", count=" + count + ", mainThread=" + mainThreadCount + ", p50=" + p50 + "us, p99=" + p99 + "us, max="
+                + max + "us}";
+    }
+}
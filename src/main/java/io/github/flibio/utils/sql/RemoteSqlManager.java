@@ -7,13 +7,44 @@ package io.github.flibio.utils.sql;
 import org.slf4j.Logger;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.plugin.Plugin;
+import org.spongepowered.api.service.sql.SqlService;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
 
 public class RemoteSqlManager extends SqlManager {
 
+    private List<String> replicaSources;
+    private ReplicaSelection selection;
+    private volatile ReplicaRouter router;
+
+    private volatile long readYourWritesMillis = 0;
+    private final ThreadLocal<Integer> pinned = ThreadLocal.withInitial(() -> 0);
+    private final ThreadLocal<Long> lastWrite = ThreadLocal.withInitial(() -> 0L);
+    private final ThreadLocal<Boolean> onReplica = ThreadLocal.withInitial(() -> false);
+
     protected RemoteSqlManager(Logger logger, String source) {
+        this(logger, source, Collections.emptyList(), ReplicaSelection.ROUND_ROBIN);
+    }
+
+    protected RemoteSqlManager(Logger logger, String source, List<String> replicaSources, ReplicaSelection selection) {
         super(logger, source);
+        this.replicaSources = replicaSources;
+        this.selection = selection;
+    }
+
+    protected RemoteSqlManager(Logger logger, String source, List<String> replicaSources, ReplicaSelection selection, SqlService sql) {
+        super(logger, source, sql);
+        this.replicaSources = replicaSources;
+        this.selection = selection;
     }
 
     /**
@@ -29,13 +60,188 @@ public class RemoteSqlManager extends SqlManager {
      */
     public static Optional<RemoteSqlManager> createInstance(Object plugin, String hostname, String port, String database, String username,
             String password) {
+        return createInstance(plugin, hostname, port, database, username, password, Collections.emptyList(), ReplicaSelection.ROUND_ROBIN);
+    }
+
+    /**
+     * Creates a new RemoteSqlManager instance which sends queries to read
+     * replicas and updates to the primary server. Uses MySQL databse.
+     * 
+     * @param plugin An instance of the main plugin class.
+     * @param hostname The hostname of the primary MySQL server.
+     * @param port The port of the primary MySQL server.
+     * @param database The database on the MySQL servers.
+     * @param username The username for the MySQL servers.
+     * @param password The password for the MySQL servers.
+     * @param replicas The replica servers, each in the form hostname:port.
+     * @param selection How the replica of each query is picked.
+     * @return The new RemoteSqlManager instance, if the plugin class is valid.
+     */
+    public static Optional<RemoteSqlManager> createInstance(Object plugin, String hostname, String port, String database, String username,
+            String password, List<String> replicas, ReplicaSelection selection) {
         if (plugin.getClass().isAnnotationPresent(Plugin.class)) {
             Plugin annotation = plugin.getClass().getAnnotation(Plugin.class);
             Logger logger = Sponge.getGame().getPluginManager().getPlugin(annotation.id()).get().getLogger();
-            return Optional.of(new RemoteSqlManager(logger, "jdbc:mysql://" + hostname + ":" + port + "/" + database + "?user=" + username
-                    + "&password=" + password));
+            List<String> replicaSources = new ArrayList<>();
+            for (String replica : replicas) {
+                replicaSources.add(createSource(replica, database, username, password));
+            }
+            return Optional.of(new RemoteSqlManager(logger, createSource(hostname + ":" + port, database, username, password), replicaSources,
+                    selection));
         } else {
             return Optional.empty();
         }
     }
+
+    private static String createSource(String host, String database, String username, String password) {
+        return "jdbc:mysql://" + host + "/" + database + "?user=" + username + "&password=" + password
+                + "&rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true";
+    }
+
+    @Override
+    public boolean initialTestConnection() {
+        if (!super.initialTestConnection()) {
+            return false;
+        }
+        if (!replicaSources.isEmpty() && router == null) {
+            try {
+                List<DataSource> sources = new ArrayList<>();
+                for (String source : replicaSources) {
+                    sources.add(createDataSource(source));
+                }
+                router = new ReplicaRouter(getLogger(), sources, selection, 10, TimeUnit.SECONDS);
+            } catch (SQLException e) {
+                getLogger().error("Failed to set up the read replicas: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the router of the read replicas.
+     *
+     * @return The router, if replicas are configured.
+     */
+    public Optional<ReplicaRouter> getReplicaRouter() {
+        return Optional.ofNullable(router);
+    }
+
+    /**
+     * Also stops the background checks of the read replicas. Queries are sent
+     * to the primary server afterwards, until the manager is initialized
+     * again.
+     */
+    @Override
+    public boolean close() {
+        ReplicaRouter router = this.router;
+        this.router = null;
+        if (router != null) {
+            router.shutdown();
+        }
+        return super.close();
+    }
+
+    /**
+     * Sends every query of the current thread to the primary server until the
+     * returned session is closed, so the thread reads its own writes.
+     * Sessions can be nested.
+     *
+     * @return The session, to be closed in a try-with-resources statement.
+     */
+    public PrimarySession pinToPrimary() {
+        pinned.set(pinned.get() + 1);
+        return () -> pinned.set(pinned.get() - 1);
+    }
+
+    /**
+     * Sets how long queries of a thread are sent to the primary server after
+     * the thread executed an update, so it reads its own writes without
+     * pinning explicitly.
+     *
+     * @param time The duration. 0 to disable.
+     * @param unit The unit of the duration.
+     */
+    public void setReadYourWritesWindow(long time, TimeUnit unit) {
+        this.readYourWritesMillis = unit.toMillis(time);
+    }
+
+    @Override
+    protected Connection getWriteConnection() throws SQLException {
+        if (readYourWritesMillis > 0) {
+            lastWrite.set(System.currentTimeMillis());
+        }
+        onReplica.set(false);
+        return super.getWriteConnection();
+    }
+
+    @Override
+    protected Connection getReadConnection() throws SQLException {
+        ReplicaRouter router = this.router;
+        long window = readYourWritesMillis;
+        onReplica.set(false);
+        if (router == null || pinned.get() > 0 || (window > 0 && System.currentTimeMillis() - lastWrite.get() < window)) {
+            return super.getReadConnection();
+        }
+        Optional<Connection> replica = router.getConnection();
+        if (!replica.isPresent()) {
+            return super.getReadConnection();
+        }
+        onReplica.set(true);
+        return replica.get();
+    }
+
+    /**
+     * Reports the failures of queries which were sent to a replica to the
+     * router instead of the health monitor, so an unavailable replica does
+     * not mark the primary server as unavailable.
+     */
+    @Override
+    protected void reportConnectionFailure(SQLException e) {
+        ReplicaRouter router = this.router;
+        if (onReplica.get() && router != null) {
+            router.reportFailure(e);
+        } else {
+            super.reportConnectionFailure(e);
+        }
+    }
+
+    /**
+     * MySQL only streams results row by row when the fetch size is
+     * {@link Integer#MIN_VALUE}. Any other fetch size loads the whole result.
+     */
+    @Override
+    protected int getStreamingFetchSize(int fetchSize) {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Uses INSERT ... ON DUPLICATE KEY UPDATE of MySQL, which updates the row
+     * that conflicts with any primary or unique key of the table.
+     */
+    @Override
+    protected String getUpsertSql(String table, String[] keyColumns, String[] columns) {
+        List<String> keys = Arrays.asList(keyColumns);
+        StringBuilder updates = new StringBuilder();
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                updates.append((updates.length() == 0) ? "" : ", ").append(column).append(" = VALUES(").append(column).append(")");
+            }
+        }
+        if (updates.length() == 0) {
+            // Only key columns, so an existing row stays as it is
+            updates.append(keyColumns[0]).append(" = ").append(keyColumns[0]);
+        }
+        return "INSERT INTO " + table + " (" + identifiers(columns) + ") VALUES (" + placeholders(columns.length) + ") ON DUPLICATE KEY UPDATE "
+                + updates;
+    }
+
+    /**
+     * Pins the queries of a thread to the primary server while open.
+     */
+    @FunctionalInterface
+    public interface PrimarySession extends AutoCloseable {
+
+        @Override
+        void close();
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Spreads read queries over a set of read replicas. Replicas are checked
+ * periodically in the background; a replica which fails a check or loses its
+ * connection is skipped until a later check succeeds. Other failures, such as
+ * a timeout of a busy pool, only skip the replica for the current query.
+ */
+public class ReplicaRouter {
+
+    private Logger logger;
+    private ReplicaSelection selection;
+    private List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<Replica> lastUsed = new ThreadLocal<>();
+    private final ScheduledExecutorService executor;
+
+    ReplicaRouter(Logger logger, List<DataSource> sources, ReplicaSelection selection, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.selection = selection;
+        for (int i = 0; i < sources.size(); i++) {
+            replicas.add(new Replica(i, sources.get(i)));
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("utils-sql-replica-health-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.scheduleWithFixedDelay(this::checkHealth, interval, interval, unit);
+    }
+
+    /**
+     * Gets a connection to a healthy replica.
+     *
+     * @return The connection, if a healthy replica accepted one.
+     */
+    Optional<Connection> getConnection() {
+        int size = replicas.size();
+        int start = (selection == ReplicaSelection.ROUND_ROBIN) ? Math.floorMod(next.getAndIncrement(), size) : leastLoaded();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                replica.inUse.incrementAndGet();
+                Connection con = ConnectionHandles.onClose(replica.source.getConnection(), replica.inUse::decrementAndGet);
+                lastUsed.set(replica);
+                return Optional.of(con);
+            } catch (SQLException e) {
+                replica.inUse.decrementAndGet();
+                if (SqlManager.isConnectionFailure(e)) {
+                    markUnhealthy(replica, e);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reports that the replica of the last connection handed out to the
+     * current thread lost the connection, so it is skipped until a later
+     * check succeeds.
+     *
+     * @param e The failure.
+     */
+    void reportFailure(SQLException e) {
+        Replica replica = lastUsed.get();
+        if (replica != null) {
+            markUnhealthy(replica, e);
+        }
+    }
+
+    /**
+     * Gets the amount of configured replicas.
+     *
+     * @return The amount of replicas.
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Gets the amount of replicas which passed their last check.
+     *
+     * @return The amount of healthy replicas.
+     */
+    public int getHealthyReplicaCount() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * Checks every replica now instead of waiting for the next scheduled
+     * check.
+     */
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection con = replica.source.getConnection()) {
+                if (con.isValid(5)) {
+                    if (!replica.healthy) {
+                        logger.info("Read replica " + replica.index + " is available again.");
+                    }
+                    replica.healthy = true;
+                } else {
+                    markUnhealthy(replica, null);
+                }
+            } catch (SQLException | RuntimeException e) {
+                // A runtime exception from the driver would otherwise end the scheduled checks
+                markUnhealthy(replica, e);
+            }
+        }
+    }
+
+    /**
+     * Stops checking the replicas.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private int leastLoaded() {
+        int best = 0;
+        int bestInUse = Integer.MAX_VALUE;
+        for (Replica replica : replicas) {
+            int inUse = replica.inUse.get();
+            if (replica.healthy && inUse < bestInUse) {
+                best = replica.index;
+                bestInUse = inUse;
+            }
+        }
+        return best;
+    }
+
+    private void markUnhealthy(Replica replica, Exception e) {
+        if (replica.healthy) {
+            logger.warn("Read replica " + replica.index + " is unavailable" + ((e == null) ? "." : ": " + e.getMessage()));
+        }
+        replica.healthy = false;
+    }
+
+    private static class Replica {
+
+        private int index;
+        private DataSource source;
+        private volatile boolean healthy = true;
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private Replica(int index, DataSource source) {
+            this.index = index;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+/**
+ * How a {@link ReplicaRouter} picks the replica of a query.
+ */
+public enum ReplicaSelection {
+
+    /**
+     * Uses every healthy replica in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Uses the healthy replica with the fewest connections currently in use.
+     */
+    LEAST_LOADED
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an object.
+ *
+ * @param <T> The type of object a row is mapped to.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Maps the current row of the result set. Should only read the columns
+     * of the row, not move the cursor.
+     *
+     * @param rs The result set, positioned on the row to map.
+     * @return The mapped object.
+     * @throws SQLException If a column could not be read.
+     */
+    T map(ResultSet rs) throws SQLException;
+
+    /**
+     * Prepares the mapper for the columns of a result set. Called once per
+     * query before any row is mapped, so mappers can resolve column labels to
+     * indexes here instead of for every row.
+     *
+     * @param meta The columns of the result set.
+     * @return The mapper to map the rows of the result set with.
+     * @throws SQLException If the columns could not be read.
+     */
+    default RowMapper<T> bind(ResultSetMetaData meta) throws SQLException {
+        return this;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Carries invalidations through a log table in the shared database. Every
+ * server appends its invalidations to the table and polls for rows with an id
+ * above the highest id it has seen, so a poll only reads new rows from the
+ * primary key index.
+ *
+ * <p>Auto increment ids are assigned when a row is inserted but become
+ * visible when its transaction commits, so a poll can see a higher id before
+ * a lower one. Skipped ids are remembered for a few seconds and polled again
+ * until they appear. Rows older than ten minutes are deleted.</p>
+ *
+ * <p>The table is always read from the primary server, since a read replica
+ * which lags behind would make ids look skipped for longer than they are
+ * remembered.</p>
+ */
+public class SqlInvalidationTransport implements InvalidationTransport {
+
+    /**
+     * The default name of the log table.
+     */
+    public static final String DEFAULT_TABLE = "utils_cache_invalidation";
+
+    /**
+     * The maximum length of a key. Invalidations of longer keys invalidate
+     * the whole cache instead.
+     */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final int POLL_LIMIT = 1000;
+    private static final int MAX_GAPS = 100;
+    private static final long GAP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long RETENTION = TimeUnit.MINUTES.toMillis(10);
+
+    private SqlManager manager;
+    private String table;
+
+    private long highWaterMark = -1;
+    private long lastPrune = 0;
+    private Map<Long, Long> gaps = new LinkedHashMap<>();
+
+    private SqlInvalidationTransport(SqlManager manager, String table) {
+        this.manager = manager;
+        this.table = SqlManager.identifier(table);
+    }
+
+    /**
+     * Creates a new SqlInvalidationTransport using the
+     * {@link #DEFAULT_TABLE}. The table is created when it is first used.
+     *
+     * @param manager The manager of the shared database.
+     * @return The new SqlInvalidationTransport.
+     */
+    public static SqlInvalidationTransport create(SqlManager manager) {
+        return create(manager, DEFAULT_TABLE);
+    }
+
+    /**
+     * Creates a new SqlInvalidationTransport. The table is created when it is
+     * first used.
+     *
+     * @param manager The manager of the shared database.
+     * @param table The name of the log table.
+     * @return The new SqlInvalidationTransport.
+     */
+    public static SqlInvalidationTransport create(SqlManager manager, String table) {
+        return new SqlInvalidationTransport(manager, table);
+    }
+
+    @Override
+    public synchronized boolean publish(List<Invalidation> invalidations) {
+        if (!initialize()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>();
+        for (Invalidation invalidation : invalidations) {
+            String key = invalidation.getKey().filter(k -> k.length() <= MAX_KEY_LENGTH).orElse(null);
+            rows.add(new Object[] {invalidation.getOrigin(), invalidation.getCache(), key, now});
+        }
+        int[] results = manager.executeBatch("INSERT INTO " + table + " (origin, cache_name, cache_key, created) VALUES (?, ?, ?, ?)", rows);
+        for (int result : results) {
+            if (result == Statement.EXECUTE_FAILED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<Invalidation> poll() {
+        if (!initialize()) {
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(noticed -> now - noticed > GAP_TIMEOUT);
+
+        List<Object> vars = new ArrayList<>();
+        vars.add(highWaterMark);
+        vars.addAll(gaps.keySet());
+        String sql = "SELECT id, origin, cache_name, cache_key FROM " + table + " WHERE id > ?"
+                + (gaps.isEmpty() ? "" : " OR id IN (" + SqlManager.placeholders(gaps.size()) + ")") + " ORDER BY id LIMIT " + POLL_LIMIT;
+        List<Row> rows = onPrimary(() -> manager.queryRows(rs -> new Row(rs.getLong(1), Invalidation.of(rs.getString(2), rs.getString(3),
+                rs.getString(4))), sql, vars.toArray()));
+
+        List<Invalidation> invalidations = new ArrayList<>();
+        for (Row row : rows) {
+            if (gaps.remove(row.id) == null) {
+                if (row.id <= highWaterMark) {
+                    continue;
+                }
+                for (long skipped = highWaterMark + 1; skipped < row.id && gaps.size() < MAX_GAPS; skipped++) {
+                    gaps.put(skipped, now);
+                }
+                highWaterMark = row.id;
+            }
+            invalidations.add(row.invalidation);
+        }
+
+        if (now - lastPrune > RETENTION / 10) {
+            lastPrune = now;
+            manager.executeUpdate("DELETE FROM " + table + " WHERE created < ?", now - RETENTION);
+        }
+        return invalidations;
+    }
+
+    /**
+     * Creates the table and reads the current highest id, so invalidations
+     * published before this server started are not applied.
+     *
+     * @return If the transport is ready.
+     */
+    private boolean initialize() {
+        if (highWaterMark >= 0) {
+            return true;
+        }
+        manager.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, origin VARCHAR(36) NOT NULL, "
+                + "cache_name VARCHAR(" + InvalidationBus.MAX_CACHE_NAME_LENGTH + ") NOT NULL, cache_key VARCHAR(" + MAX_KEY_LENGTH + "), "
+                + "created BIGINT NOT NULL)");
+        highWaterMark = onPrimary(() -> manager.queryType("hwm", Long.class, "SELECT COALESCE(MAX(id), 0) AS hwm FROM " + table)).orElse(-1L);
+        return highWaterMark >= 0;
+    }
+
+    private <R> R onPrimary(Supplier<R> query) {
+        if (manager instanceof RemoteSqlManager) {
+            try (RemoteSqlManager.PrimarySession session = ((RemoteSqlManager) manager).pinToPrimary()) {
+                return query.get();
+            }
+        }
+        return query.get();
+    }
+
+    private static class Row {
+
+        private long id;
+        private Invalidation invalidation;
+
+        private Row(long id, Invalidation invalidation) {
+            this.id = id;
+            this.invalidation = invalidation;
+        }
+    }
+}
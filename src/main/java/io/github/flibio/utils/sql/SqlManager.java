@@ -11,20 +11,48 @@ import org.spongepowered.api.service.sql.SqlService;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.sql.DataSource;
 
 public class SqlManager {
 
+    /**
+     * The token which is replaced by the keys in the sql of
+     * {@link #queryMap(Collection, String, Class, RowMapper, String, Object...)}.
+     */
+    public static final String KEYS_TOKEN = "{keys}";
+
     private Logger logger;
     private String datasource;
     private SqlService sql;
 
-    private DataSource dataSource;
+    private InstrumentedDataSource dataSource;
+    private StatementCache statementCache = new StatementCache(64);
+    private QueryMetrics queryMetrics;
+    private volatile HealthMonitor healthMonitor;
+    private volatile int transactionRetries = 3;
+    private volatile int inChunkSize = 500;
 
     /**
      * Manages SQL connections and database calls. initalTestConnection() must be called before the manager is used.
@@ -33,14 +61,28 @@ public class SqlManager {
      * @param datasource A string form of the data source.
      */
     protected SqlManager(Logger logger, String datasource) {
+        this(logger, datasource, Sponge.getServiceManager().provide(SqlService.class).get());
+    }
+
+    /**
+     * Manages SQL connections and database calls with the given SqlService,
+     * for example to run outside of a server. initalTestConnection() must be
+     * called before the manager is used.
+     *
+     * @param logger The logger.
+     * @param datasource A string form of the data source.
+     * @param sql The service which provides the data source.
+     */
+    protected SqlManager(Logger logger, String datasource, SqlService sql) {
         this.logger = logger;
         this.datasource = datasource;
-        this.sql = Sponge.getServiceManager().provide(SqlService.class).get();
+        this.sql = sql;
+        this.queryMetrics = new QueryMetrics(logger);
     }
 
     public boolean initialTestConnection() {
         try {
-            dataSource = sql.getDataSource(datasource);
+            dataSource = createDataSource(datasource);
             Connection con = dataSource.getConnection();
             con.close();
             return true;
@@ -50,11 +92,16 @@ public class SqlManager {
     }
 
     /**
-     * Tests if the connection to the database if functional.
+     * Tests if the connection to the database if functional. If the health
+     * monitor is running, its last known state is returned instead.
      *
      * @return If the connection to the database if functional.
      */
     public boolean testConnection() {
+        HealthMonitor monitor = healthMonitor;
+        if (monitor != null) {
+            return monitor.isHealthy();
+        }
         try {
             Connection con = dataSource.getConnection();
             try {
@@ -69,6 +116,58 @@ public class SqlManager {
         }
     }
 
+    /**
+     * Starts probing the database in the background. While the database is
+     * unavailable, calls of this manager fail immediately instead of waiting
+     * for a connection, and {@link #testConnection()} returns the last known
+     * state without a round trip. Make sure the datasource is initialized
+     * first.
+     *
+     * @param interval The time between probes.
+     * @param unit The unit of the interval.
+     * @return The health monitor.
+     */
+    public HealthMonitor startHealthMonitor(long interval, TimeUnit unit) {
+        stopHealthMonitor();
+        healthMonitor = new HealthMonitor(logger, dataSource, interval, unit);
+        return healthMonitor;
+    }
+
+    /**
+     * Stops the health monitor, if it is running.
+     */
+    public void stopHealthMonitor() {
+        if (healthMonitor != null) {
+            healthMonitor.shutdown();
+            healthMonitor = null;
+        }
+    }
+
+    /**
+     * Stops the background tasks of the manager, such as the health monitor
+     * and the leak detection. Should be called when the plugin is disabled or
+     * reloaded, so their threads do not leak. The manager can be initialized
+     * again afterwards.
+     *
+     * @return If the manager was closed cleanly.
+     */
+    public boolean close() {
+        stopHealthMonitor();
+        if (dataSource != null) {
+            dataSource.setLeakThreshold(0, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the health monitor.
+     *
+     * @return The health monitor, if it is running.
+     */
+    public Optional<HealthMonitor> getHealthMonitor() {
+        return Optional.ofNullable(healthMonitor);
+    }
+
     /**
      * Returns the datasource for custom queries. Make sure the datasource is initialized first.
      *
@@ -78,6 +177,124 @@ public class SqlManager {
         return dataSource;
     }
 
+    /**
+     * Gets a connection for an operation which writes data.
+     *
+     * @return The connection.
+     * @throws SQLException If no connection could be acquired.
+     */
+    protected Connection getWriteConnection() throws SQLException {
+        return acquire();
+    }
+
+    /**
+     * Gets a connection for a query which only reads data.
+     *
+     * @return The connection.
+     * @throws SQLException If no connection could be acquired.
+     */
+    protected Connection getReadConnection() throws SQLException {
+        return acquire();
+    }
+
+    private Connection acquire() throws SQLException {
+        HealthMonitor monitor = healthMonitor;
+        if (monitor == null) {
+            return dataSource.getConnection();
+        }
+        monitor.checkAvailable();
+        try {
+            Connection con = dataSource.getConnection();
+            monitor.reportSuccess();
+            return con;
+        } catch (SQLException e) {
+            monitor.reportFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets a data source from the SqlService, wrapped to record the metrics of
+     * its connection pool.
+     *
+     * @param datasource A string form of the data source.
+     * @return The data source.
+     * @throws SQLException If the data source could not be created.
+     */
+    protected InstrumentedDataSource createDataSource(String datasource) throws SQLException {
+        return new InstrumentedDataSource(sql.getDataSource(datasource), logger);
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the connection pool. Make sure the
+     * datasource is initialized first.
+     *
+     * @return The metrics.
+     */
+    public PoolMetrics getPoolMetrics() {
+        return dataSource.getMetrics();
+    }
+
+    /**
+     * Sets how long a connection may be held before it is reported as a leak.
+     * Make sure the datasource is initialized first.
+     *
+     * @param time The threshold. 0 to disable leak detection.
+     * @param unit The unit of the threshold.
+     * @see InstrumentedDataSource#setLeakThreshold(long, TimeUnit)
+     */
+    public void setLeakThreshold(long time, TimeUnit unit) {
+        dataSource.setLeakThreshold(time, unit);
+    }
+
+    protected Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Gets the latencies of the calls of this manager and the settings of the
+     * slow query log.
+     *
+     * @return The query metrics.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * Gets the cache of prepared statements used by the statement handles of
+     * this manager.
+     *
+     * @return The statement cache.
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Registers an update which is executed often. The returned handle reuses
+     * the prepared statement on every pooled connection.
+     *
+     * @param sql The sql to execute.
+     * @return The handle of the update.
+     */
+    public PreparedUpdate prepareUpdate(String sql) {
+        return new PreparedUpdate(this, sql);
+    }
+
+    /**
+     * Registers a query which is executed often. The returned handle reuses
+     * the prepared statement on every pooled connection.
+     *
+     * @param columnName The column to retrieve the data of.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run.
+     * @return The handle of the query.
+     */
+    public <T> PreparedQuery<T> prepareQuery(String columnName, Class<T> type, String sql) {
+        return new PreparedQuery<>(this, columnName, type, sql);
+    }
+
     /**
      * Executes an update to the database. Recommended to run in an async
      * thread.
@@ -88,25 +305,253 @@ public class SqlManager {
      * @return If the update was successful or not.
      */
     public boolean executeUpdate(String sql, Object... vars) {
+        return executeUpdate(false, sql, vars);
+    }
+
+    boolean executeUpdate(boolean cached, String sql, Object[] vars) {
+        return executeUpdateCount(cached, sql, vars) > 0;
+    }
+
+    private int executeUpdateCount(boolean cached, String sql, Object[] vars) {
+        long start = System.nanoTime();
         try {
-            Connection con = dataSource.getConnection();
             try {
-                PreparedStatement ps = con.prepareStatement(sql);
-                ps.closeOnCompletion();
-                for (int i = 0; i < vars.length; i++) {
-                    ps.setObject(i + 1, vars[i]);
+                Connection con = getWriteConnection();
+                try {
+                    PreparedStatement ps = prepare(con, sql, cached);
+                    try {
+                        bind(ps, vars);
+                        return ps.executeUpdate();
+                    } finally {
+                        release(ps, cached);
+                    }
+                } catch (SQLException e) {
+                    discard(con, sql, cached);
+                    throw e;
+                } finally {
+                    con.close();
                 }
-                return (ps.executeUpdate() > 0);
-            } finally {
-                con.close();
+            } catch (Exception e) {
+                logError(e);
+                return -1;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
-            return false;
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
         }
     }
 
+    /**
+     * Executes an update once for every set of variables, sending all of them
+     * to the database in a single batch on one connection. The batch is
+     * committed as a whole; if any row fails, none of the rows are applied.
+     * Recommended to run in an async thread.
+     *
+     * @param sql The sql to execute.
+     * @param rows The variables of each row. Each array is replaced in the sql
+     *        in chronological order.
+     * @return The update count of each row, in the order of the rows. Rows
+     *         that were not applied are marked with
+     *         {@link Statement#EXECUTE_FAILED}, and rows whose count the
+     *         driver did not report with {@link Statement#SUCCESS_NO_INFO}.
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) {
+        return executeBatch(false, sql, rows);
+    }
+
+    int[] executeBatch(boolean cached, String sql, List<Object[]> rows) {
+        long start = System.nanoTime();
+        try {
+            int[] results = new int[rows.size()];
+            Arrays.fill(results, Statement.EXECUTE_FAILED);
+            if (rows.isEmpty()) {
+                return results;
+            }
+            try {
+                Connection con = getWriteConnection();
+                try {
+                    boolean autoCommit = con.getAutoCommit();
+                    con.setAutoCommit(false);
+                    try {
+                        PreparedStatement ps = prepare(con, sql, cached);
+                        try {
+                            for (Object[] vars : rows) {
+                                bind(ps, vars);
+                                ps.addBatch();
+                            }
+                            int[] counts = ps.executeBatch();
+                            con.commit();
+                            System.arraycopy(counts, 0, results, 0, Math.min(counts.length, results.length));
+                        } finally {
+                            release(ps, cached);
+                        }
+                    } catch (SQLException e) {
+                        discard(con, sql, cached);
+                        con.rollback();
+                        throw e;
+                    } finally {
+                        con.setAutoCommit(autoCommit);
+                    }
+                } finally {
+                    con.close();
+                }
+            } catch (Exception e) {
+                logError(e);
+            }
+            return results;
+        } finally {
+            queryMetrics.record(sql, rows.isEmpty() ? 0 : rows.get(0).length, start);
+        }
+    }
+
+    /**
+     * Runs statements in one transaction on a single connection, committing
+     * them together. The transaction is rolled back if the callback throws an
+     * exception, and retried up to the configured amount of times if it
+     * failed because of a deadlock. Transactions cannot be nested.
+     * Recommended to run in an async thread.
+     *
+     * @param callback The statements to run.
+     * @return The result of the callback, if the transaction succeeded and
+     *         the result is not null.
+     */
+    public <R> Optional<R> transaction(TransactionCallback<R> callback) {
+        return transaction(-1, callback);
+    }
+
+    /**
+     * Runs statements in one transaction on a single connection, committing
+     * them together. The transaction is rolled back if the callback throws an
+     * exception, and retried up to the configured amount of times if it
+     * failed because of a deadlock. Transactions cannot be nested.
+     * Recommended to run in an async thread.
+     *
+     * @param isolation The isolation level, for example
+     *        {@link Connection#TRANSACTION_SERIALIZABLE}.
+     * @param callback The statements to run.
+     * @return The result of the callback, if the transaction succeeded and
+     *         the result is not null.
+     */
+    public <R> Optional<R> transaction(int isolation, TransactionCallback<R> callback) {
+        for (int attempt = 0;; attempt++) {
+            try {
+                Connection con = getWriteConnection();
+                try {
+                    boolean autoCommit = con.getAutoCommit();
+                    int previousIsolation = con.getTransactionIsolation();
+                    if (isolation >= 0 && isolation != previousIsolation) {
+                        con.setTransactionIsolation(isolation);
+                    }
+                    con.setAutoCommit(false);
+                    Transaction transaction = new Transaction(this, con);
+                    try {
+                        R result = callback.run(transaction);
+                        if (transaction.isRollbackOnly()) {
+                            con.rollback();
+                        } else {
+                            con.commit();
+                        }
+                        return Optional.ofNullable(result);
+                    } catch (Exception e) {
+                        con.rollback();
+                        throw e;
+                    } finally {
+                        transaction.close();
+                        con.setAutoCommit(autoCommit);
+                        if (isolation >= 0 && isolation != previousIsolation) {
+                            con.setTransactionIsolation(previousIsolation);
+                        }
+                    }
+                } finally {
+                    con.close();
+                }
+            } catch (SQLException e) {
+                if (attempt < transactionRetries && isDeadlock(e)) {
+                    logger.warn("Transaction deadlocked, retrying (" + (attempt + 1) + "/" + transactionRetries + ").");
+                    try {
+                        // Back off for a random time so the competing transactions do not collide again
+                        Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * (attempt + 1));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return Optional.empty();
+                    }
+                    continue;
+                }
+                logError(e);
+                return Optional.empty();
+            } catch (Exception e) {
+                logError(e);
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Sets how many times a transaction is retried after it failed because
+     * of a deadlock. Defaults to 3.
+     *
+     * @param retries The amount of retries.
+     */
+    public void setTransactionRetries(int retries) {
+        this.transactionRetries = retries;
+    }
+
+    private static boolean isDeadlock(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            // 40001 is the serialization failure state, 1213 the MySQL deadlock error code
+            if (cause instanceof SQLException && ("40001".equals(((SQLException) cause).getSQLState())
+                    || ((SQLException) cause).getErrorCode() == 1213)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inserts a row, or updates the row with the same keys if one exists, in
+     * a single statement. Recommended to run in an async thread.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the primary or unique key of the
+     *        table, which must be contained in the values.
+     * @param values The value of each column.
+     * @return If the upsert was successful or not.
+     * @throws UnsupportedOperationException If the database does not support
+     *         upserts.
+     */
+    public boolean upsert(String table, String[] keyColumns, Map<String, ?> values) {
+        String[] columns = values.keySet().toArray(new String[0]);
+        return executeUpdateCount(true, upsertSql(table, keyColumns, columns), values.values().toArray()) >= 0;
+    }
+
+    /**
+     * Inserts many rows, or updates the rows with the same keys if they exist,
+     * in a single batch. The batch is committed as a whole. Recommended to run
+     * in an async thread.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the primary or unique key of the
+     *        table, which must be contained in the columns.
+     * @param columns The columns of the rows.
+     * @param rows The values of each row, in the order of the columns.
+     * @return The update count of each row, see
+     *         {@link #executeBatch(String, List)}.
+     * @throws UnsupportedOperationException If the database does not support
+     *         upserts.
+     */
+    public int[] upsertBatch(String table, String[] keyColumns, String[] columns, List<Object[]> rows) {
+        return executeBatch(true, upsertSql(table, keyColumns, columns), rows);
+    }
+
+    String upsertSql(String table, String[] keyColumns, String[] columns) {
+        if (keyColumns.length == 0 || !Arrays.asList(columns).containsAll(Arrays.asList(keyColumns))) {
+            throw new IllegalArgumentException("The key columns must be a non-empty subset of the columns");
+        }
+        identifier(table);
+        identifiers(keyColumns);
+        identifiers(columns);
+        return getUpsertSql(table, keyColumns, columns);
+    }
+
     /**
      * Queries the database and retrieves a column's data.
      *
@@ -117,31 +562,39 @@ public class SqlManager {
      *        order.
      * @return The column's data, if it was found.
      */
-    @SuppressWarnings("unchecked")
     public <T> Optional<T> queryType(String columnName, Class<T> type, String sql, Object... vars) {
+        return queryType(false, columnName, type, sql, vars);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Optional<T> queryType(boolean cached, String columnName, Class<T> type, String sql, Object[] vars) {
+        long start = System.nanoTime();
         try {
-            Connection con = dataSource.getConnection();
             try {
-                PreparedStatement ps = con.prepareStatement(sql);
-                ps.closeOnCompletion();
-                for (int i = 0; i < vars.length; i++) {
-                    ps.setObject(i + 1, vars[i]);
-                }
-                ResultSet rs = ps.executeQuery();
-                rs.next();
-                Object raw = rs.getObject(columnName);
-                rs.close();
-                if (raw.getClass().equals(type)) {
-                    return Optional.of((T) raw);
+                Connection con = getReadConnection();
+                try {
+                    PreparedStatement ps = prepare(con, sql, cached);
+                    try {
+                        bind(ps, vars);
+                        ResultSet rs = ps.executeQuery();
+                        Object raw = rs.next() ? rs.getObject(columnName) : null;
+                        rs.close();
+                        return Optional.ofNullable((T) ColumnTypes.convert(raw, type));
+                    } finally {
+                        release(ps, cached);
+                    }
+                } catch (SQLException e) {
+                    discard(con, sql, cached);
+                    throw e;
+                } finally {
+                    con.close();
                 }
+            } catch (Exception e) {
+                logError(e);
                 return Optional.empty();
-            } finally {
-                con.close();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
-            return Optional.empty();
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
         }
     }
 
@@ -155,33 +608,329 @@ public class SqlManager {
      *        order.
      * @return The list of data.
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> queryTypeList(String columnName, Class<T> type, String sql, Object... vars) {
-        ArrayList<T> list = new ArrayList<>();
+        return queryTypeList(false, columnName, type, sql, vars);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> List<T> queryTypeList(boolean cached, String columnName, Class<T> type, String sql, Object[] vars) {
+        long start = System.nanoTime();
         try {
-            Connection con = dataSource.getConnection();
+            ArrayList<T> list = new ArrayList<>();
             try {
-                PreparedStatement ps = con.prepareStatement(sql);
-                ps.closeOnCompletion();
-                for (int i = 0; i < vars.length; i++) {
-                    ps.setObject(i + 1, vars[i]);
+                Connection con = getReadConnection();
+                try {
+                    PreparedStatement ps = prepare(con, sql, cached);
+                    try {
+                        bind(ps, vars);
+                        ResultSet rs = ps.executeQuery();
+
+                        while (rs.next()) {
+                            Object raw = rs.getObject(columnName);
+                            list.add((T) ColumnTypes.convert(raw, type));
+                        }
+                        rs.close();
+                    } finally {
+                        release(ps, cached);
+                    }
+                } catch (SQLException e) {
+                    discard(con, sql, cached);
+                    throw e;
+                } finally {
+                    con.close();
                 }
-                ResultSet rs = ps.executeQuery();
+            } catch (Exception e) {
+                logError(e);
+            }
+            return list;
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries the rows of many keys at once and maps them by key. The token
+     * {@value #KEYS_TOKEN} in the sql is replaced by the parameters of an
+     * {@code IN} list, for example
+     * {@code SELECT * FROM balances WHERE uuid IN ({keys})}. Large key sets
+     * are split into chunks, see {@link #setInChunkSize(int)}. UUID keys are
+     * sent as strings. The keys are bound after the other variables, so the
+     * token must follow every other parameter of the sql. The statements are
+     * kept prepared between calls. Recommended to run in an async thread.
+     *
+     * @param keys The keys to query.
+     * @param keyColumn The column which holds the key of a row.
+     * @param keyType The type of the keys.
+     * @param mapper The mapper of the rows.
+     * @param sql The sql to run, containing {@value #KEYS_TOKEN} once.
+     * @param vars The other variables to replace in the sql. Replaced in
+     *        chronological order before the keys.
+     * @return The mapped row of every key which was found. Keys are missing
+     *         if their row does not exist or their chunk failed.
+     */
+    public <K, T> Map<K, T> queryMap(Collection<? extends K> keys, String keyColumn, Class<K> keyType, RowMapper<T> mapper, String sql,
+            Object... vars) {
+        int token = sql.indexOf(KEYS_TOKEN);
+        if (token < 0) {
+            throw new IllegalArgumentException("The sql does not contain " + KEYS_TOKEN);
+        }
+        String prefix = sql.substring(0, token);
+        String suffix = sql.substring(token + KEYS_TOKEN.length());
+        RowMapper<Map.Entry<K, T>> entries = new RowMapper<Map.Entry<K, T>>() {
+
+            @Override
+            public Map.Entry<K, T> map(ResultSet rs) throws SQLException {
+                return bind(rs.getMetaData()).map(rs);
+            }
+
+            @Override
+            public RowMapper<Map.Entry<K, T>> bind(ResultSetMetaData meta) throws SQLException {
+                RowMapper<T> bound = mapper.bind(meta);
+                return rs -> new AbstractMap.SimpleImmutableEntry<>(keyType.cast(ColumnTypes.convert(rs.getObject(keyColumn), keyType)),
+                        bound.map(rs));
+            }
+        };
 
-                while (rs.next()) {
-                    Object raw = rs.getObject(columnName);
-                    list.add((T) raw);
+        Map<K, T> results = new HashMap<>();
+        List<K> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        int chunkSize = inChunkSize;
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<K> chunk = distinct.subList(from, Math.min(distinct.size(), from + chunkSize));
+            // Pad the chunk to a power of two by repeating a key, so few distinct statements are prepared
+            int size = Math.min(chunkSize, Integer.highestOneBit(chunk.size() * 2 - 1));
+            Object[] params = Arrays.copyOf(vars, vars.length + size);
+            for (int i = 0; i < size; i++) {
+                Object key = chunk.get(Math.min(i, chunk.size() - 1));
+                params[vars.length + i] = (key instanceof UUID) ? key.toString() : key;
+            }
+            for (Map.Entry<K, T> entry : queryRows(true, entries, prefix + placeholders(size) + suffix, params)) {
+                if (entry.getKey() != null) {
+                    results.put(entry.getKey(), entry.getValue());
                 }
-                rs.close();
+            }
+        }
+        return results;
+    }
 
-            } finally {
+    /**
+     * Queries a column of the rows of many keys at once and maps it by key.
+     * See {@link #queryMap(Collection, String, Class, RowMapper, String,
+     * Object...)}.
+     *
+     * @param keys The keys to query.
+     * @param keyColumn The column which holds the key of a row.
+     * @param keyType The type of the keys.
+     * @param columnName The column to retrieve the data of.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run, containing {@value #KEYS_TOKEN} once.
+     * @param vars The other variables to replace in the sql.
+     * @return The column's data of every key which was found.
+     */
+    @SuppressWarnings("unchecked")
+    public <K, T> Map<K, T> queryTypeMap(Collection<? extends K> keys, String keyColumn, Class<K> keyType, String columnName, Class<T> type,
+            String sql, Object... vars) {
+        return queryMap(keys, keyColumn, keyType, rs -> (T) ColumnTypes.convert(rs.getObject(columnName), type), sql, vars);
+    }
+
+    /**
+     * Sets the maximum amount of keys sent in one query by
+     * {@link #queryMap(Collection, String, Class, RowMapper, String,
+     * Object...)}. Defaults to 500.
+     *
+     * @param size The amount of keys.
+     */
+    public void setInChunkSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        this.inChunkSize = size;
+    }
+
+    /**
+     * Queries the database and maps the first row to an object, reading all
+     * of its columns in one query.
+     *
+     * @param mapper The mapper of the row, for example
+     *        {@link BeanRowMapper#of(Class)}.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The mapped row, if it was found.
+     */
+    public <T> Optional<T> queryRow(RowMapper<T> mapper, String sql, Object... vars) {
+        long start = System.nanoTime();
+        try {
+            try {
+                Connection con = getReadConnection();
+                try {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    try {
+                        bind(ps, vars);
+                        ResultSet rs = ps.executeQuery();
+                        T row = rs.next() ? mapper.bind(rs.getMetaData()).map(rs) : null;
+                        rs.close();
+                        return Optional.ofNullable(row);
+                    } finally {
+                        ps.close();
+                    }
+                } finally {
+                    con.close();
+                }
+            } catch (Exception e) {
+                logError(e);
+                return Optional.empty();
+            }
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries the database and maps every row to an object.
+     *
+     * @param mapper The mapper of the rows, for example
+     *        {@link BeanRowMapper#of(Class)}.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The list of mapped rows.
+     */
+    public <T> List<T> queryRows(RowMapper<T> mapper, String sql, Object... vars) {
+        return queryRows(false, mapper, sql, vars);
+    }
+
+    <T> List<T> queryRows(boolean cached, RowMapper<T> mapper, String sql, Object[] vars) {
+        long start = System.nanoTime();
+        try {
+            ArrayList<T> list = new ArrayList<>();
+            try {
+                Connection con = getReadConnection();
+                try {
+                    PreparedStatement ps = prepare(con, sql, cached);
+                    try {
+                        bind(ps, vars);
+                        ResultSet rs = ps.executeQuery();
+                        RowMapper<T> bound = mapper.bind(rs.getMetaData());
+                        while (rs.next()) {
+                            list.add(bound.map(rs));
+                        }
+                        rs.close();
+                    } finally {
+                        release(ps, cached);
+                    }
+                } catch (SQLException e) {
+                    discard(con, sql, cached);
+                    throw e;
+                } finally {
+                    con.close();
+                }
+            } catch (Exception e) {
+                logError(e);
+            }
+            return list;
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries the database and streams a column's data, reading rows from the
+     * database as the stream is consumed instead of loading all of them into
+     * memory. The stream holds a connection until it is closed, so it must
+     * be used in a try-with-resources statement. Recommended to run in an
+     * async thread.
+     *
+     * @param columnName The column whose data will be streamed.
+     * @param type The type of data to retrieve.
+     * @param fetchSize The amount of rows to fetch from the database at once.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The stream of data. Empty if the query failed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Stream<T> queryStream(String columnName, Class<T> type, int fetchSize, String sql, Object... vars) {
+        try {
+            Connection con = getReadConnection();
+            try {
+                PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(getStreamingFetchSize(fetchSize));
+                bind(ps, vars);
+                ResultSet rs = ps.executeQuery();
+                Runnable close = () -> {
+                    try {
+                        // Closing the connection also closes the statement and result set
+                        if (!con.isClosed()) {
+                            con.close();
+                        }
+                    } catch (SQLException e) {
+                        logger.error(e.getMessage());
+                    }
+                };
+                Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+
+                    @Override
+                    public boolean tryAdvance(Consumer<? super T> action) {
+                        try {
+                            if (!rs.next()) {
+                                close.run();
+                                return false;
+                            }
+                            action.accept((T) ColumnTypes.convert(rs.getObject(columnName), type));
+                            return true;
+                        } catch (SQLException e) {
+                            logError(e);
+                            close.run();
+                            return false;
+                        }
+                    }
+                };
+                return StreamSupport.stream(rows, false).onClose(close);
+            } catch (Exception e) {
                 con.close();
+                throw e;
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
+            logError(e);
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Queries the database and passes a column's data of every row to a
+     * consumer as it is read, without loading all rows into memory.
+     * Recommended to run in an async thread.
+     *
+     * @param columnName The column whose data will be passed to the consumer.
+     * @param type The type of data to retrieve.
+     * @param fetchSize The amount of rows to fetch from the database at once.
+     * @param consumer The consumer of the data.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in sql. Replaced in chronological
+     *        order.
+     * @return The amount of rows passed to the consumer.
+     */
+    public <T> long queryEach(String columnName, Class<T> type, int fetchSize, Consumer<? super T> consumer, String sql, Object... vars) {
+        long count = 0;
+        try (Stream<T> stream = queryStream(columnName, type, fetchSize, sql, vars)) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
         }
-        return list;
+        return count;
+    }
+
+    /**
+     * Gets the fetch size to stream results with. Drivers which only stream
+     * results in a special mode translate the requested fetch size here.
+     *
+     * @param fetchSize The requested amount of rows to fetch at once.
+     * @return The fetch size to set on the statement.
+     */
+    protected int getStreamingFetchSize(int fetchSize) {
+        return fetchSize;
     }
 
     /**
@@ -193,26 +942,184 @@ public class SqlManager {
      * @return If the row was found or not.
      */
     public boolean queryExists(String sql, Object... vars) {
+        return queryExists(false, sql, vars);
+    }
+
+    boolean queryExists(boolean cached, String sql, Object[] vars) {
+        long start = System.nanoTime();
         try {
-            Connection con = dataSource.getConnection();
             try {
-                PreparedStatement ps = con.prepareStatement(sql);
-                ps.closeOnCompletion();
-                for (int i = 0; i < vars.length; i++) {
-                    ps.setObject(i + 1, vars[i]);
+                Connection con = getReadConnection();
+                try {
+                    PreparedStatement ps = prepare(con, sql, cached);
+                    try {
+                        bind(ps, vars);
+                        ResultSet rs = ps.executeQuery();
+
+                        boolean exists = rs.next();
+                        rs.close();
+                        return exists;
+                    } finally {
+                        release(ps, cached);
+                    }
+                } catch (SQLException e) {
+                    discard(con, sql, cached);
+                    throw e;
+                } finally {
+                    con.close();
                 }
-                ResultSet rs = ps.executeQuery();
+            } catch (Exception e) {
+                logError(e);
+                return false;
+            }
+        } finally {
+            queryMetrics.record(sql, vars.length, start);
+        }
+    }
 
-                boolean exists = rs.next();
-                rs.close();
-                return exists;
-            } finally {
-                con.close();
+    private PreparedStatement prepare(Connection con, String sql, boolean cached) throws SQLException {
+        return cached ? statementCache.prepare(con, sql) : con.prepareStatement(sql);
+    }
+
+    private void release(PreparedStatement ps, boolean cached) throws SQLException {
+        if (cached) {
+            statementCache.release(ps);
+        } else {
+            ps.close();
+        }
+    }
+
+    private void discard(Connection con, String sql, boolean cached) {
+        if (cached) {
+            statementCache.discard(con, sql);
+        }
+    }
+
+    /**
+     * Inserts many rows into a table on the given connection, using the
+     * fastest way the database supports. By default the rows are sent as
+     * multi-row INSERT statements.
+     *
+     * @param con The connection to insert the rows with.
+     * @param table The table.
+     * @param columns The columns of the rows.
+     * @param rows The values of each row, in the order of the columns.
+     * @throws SQLException If the rows could not be inserted.
+     */
+    protected void bulkInsert(Connection con, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        String prefix = "INSERT INTO " + identifier(table) + " (" + identifiers(columns) + ") VALUES ";
+        String tuple = "(" + placeholders(columns.length) + ")";
+        // Stay well below the parameter limits of the drivers
+        int perStatement = Math.max(1, 30000 / columns.length);
+        for (int from = 0; from < rows.size(); from += perStatement) {
+            List<Object[]> chunk = rows.subList(from, Math.min(rows.size(), from + perStatement));
+            StringBuilder sql = new StringBuilder(prefix);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append((i == 0) ? tuple : ", " + tuple);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            logger.error(e.getMessage());
-            return false;
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Object[] row : chunk) {
+                    for (Object value : row) {
+                        ps.setObject(index++, value);
+                    }
+                }
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Builds the statement which inserts a row, or updates the row with the
+     * same keys if one exists. The names are already checked with
+     * {@link #identifier(String)}. Managers of databases which support upserts
+     * override this.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the key, contained in the columns.
+     * @param columns The columns, in the order of the parameters.
+     * @return The sql, with a parameter for every column.
+     * @throws UnsupportedOperationException If the database does not support
+     *         upserts.
+     */
+    protected String getUpsertSql(String table, String[] keyColumns, String[] columns) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support upserts");
+    }
+
+    /**
+     * Checks that a name can be used as a table or column name in generated
+     * sql.
+     *
+     * @param name The name.
+     * @return The name.
+     * @throws IllegalArgumentException If the name is not a plain identifier.
+     */
+    static String identifier(String name) {
+        if (!name.matches("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?")) {
+            throw new IllegalArgumentException("Invalid sql identifier: " + name);
+        }
+        return name;
+    }
+
+    static String identifiers(String[] names) {
+        StringBuilder joined = new StringBuilder();
+        for (String name : names) {
+            joined.append((joined.length() == 0) ? "" : ", ").append(identifier(name));
+        }
+        return joined.toString();
+    }
+
+    static String placeholders(int count) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            joined.append((i == 0) ? "?" : ", ?");
+        }
+        return joined.toString();
+    }
+
+    private void logError(Exception e) {
+        // Calls rejected while the database is down are already reported by the health monitor
+        if (e instanceof DatabaseUnavailableException) {
+            return;
+        }
+        if (e instanceof SQLException && isConnectionFailure((SQLException) e)) {
+            reportConnectionFailure((SQLException) e);
+        }
+        e.printStackTrace();
+        logger.error(e.getMessage());
+    }
+
+    /**
+     * Reports that an operation lost its connection to the health monitor,
+     * if it is running. Subclasses which send operations to other servers
+     * than the primary server report the failures of those servers
+     * elsewhere.
+     *
+     * @param e The failure.
+     */
+    protected void reportConnectionFailure(SQLException e) {
+        HealthMonitor monitor = healthMonitor;
+        if (monitor != null) {
+            monitor.reportFailure(e);
+        }
+    }
+
+    static boolean isConnectionFailure(SQLException e) {
+        // SQL states of class 08 are connection exceptions
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    /**
+     * Replaces the variables of a statement in chronological order.
+     *
+     * @param ps The statement.
+     * @param vars The variables to replace.
+     * @throws SQLException If a variable could not be set.
+     */
+    static void bind(PreparedStatement ps, Object[] vars) throws SQLException {
+        for (int i = 0; i < vars.length; i++) {
+            ps.setObject(i + 1, vars[i]);
         }
     }
 
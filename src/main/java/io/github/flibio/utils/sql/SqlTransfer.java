@@ -0,0 +1,256 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Copies the rows of a table from one SqlManager to another in large batches,
+ * for example to migrate from a {@link LocalSqlManager} to a
+ * {@link RemoteSqlManager}. The table must already exist in the target.
+ *
+ * <p>Rows are read in the order of a unique key column. After every batch
+ * the last copied key is committed to a checkpoint table in the target, in
+ * the same transaction as the rows, so an interrupted transfer continues
+ * where it stopped when it is run again. The key column must hold integers or
+ * strings of at most {@value #MAX_KEY_LENGTH} characters.</p>
+ *
+ * <p>The rows are read from the primary server of the source, so a read
+ * replica which lags behind cannot leave rows out.</p>
+ */
+public class SqlTransfer {
+
+    /**
+     * The table in the target database which stores the progress of
+     * transfers.
+     */
+    public static final String CHECKPOINT_TABLE = "utils_transfer_checkpoint";
+
+    /**
+     * The maximum length of a string key.
+     */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private SqlManager source;
+    private SqlManager target;
+    private String table;
+    private String keyColumn;
+    private int batchSize = 5000;
+    private BiConsumer<Long, Long> listener;
+
+    private SqlTransfer(SqlManager source, SqlManager target, String table, String keyColumn) {
+        this.source = source;
+        this.target = target;
+        this.table = SqlManager.identifier(table);
+        this.keyColumn = SqlManager.identifier(keyColumn);
+    }
+
+    /**
+     * Creates a new SqlTransfer. Both managers must be initialized.
+     *
+     * @param source The manager to read the rows from.
+     * @param target The manager to write the rows to.
+     * @param table The table to copy.
+     * @param keyColumn A unique column of the table, used to order the rows
+     *        and remember the progress.
+     * @return The new SqlTransfer.
+     */
+    public static SqlTransfer create(SqlManager source, SqlManager target, String table, String keyColumn) {
+        return new SqlTransfer(source, target, table, keyColumn);
+    }
+
+    /**
+     * Sets the amount of rows copied in every batch. Defaults to 5000.
+     *
+     * @param batchSize The amount of rows.
+     * @return This transfer.
+     */
+    public SqlTransfer setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the listener which is told the amount of copied rows and the total
+     * amount of rows after every batch.
+     *
+     * @param listener The listener.
+     * @return This transfer.
+     */
+    public SqlTransfer setProgressListener(BiConsumer<Long, Long> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Copies all rows which have not been copied yet. Recommended to run in an
+     * async thread.
+     *
+     * @return The total amount of copied rows, including those copied by
+     *         earlier runs, or -1 if the transfer failed or the type of the
+     *         key column is not supported.
+     */
+    public long run() {
+        RemoteSqlManager.PrimarySession session = (source instanceof RemoteSqlManager) ? ((RemoteSqlManager) source).pinToPrimary() : null;
+        try {
+            return copy();
+        } catch (Exception e) {
+            e.printStackTrace();
+            target.getLogger().error("Failed to transfer " + table + ": " + e.getMessage());
+            return -1;
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private long copy() throws SQLException {
+        boolean numericKey = isNumericKey();
+        createCheckpointTable();
+        Object lastKey = null;
+        long copied = 0;
+        try (Connection con = target.getWriteConnection();
+                PreparedStatement ps = con.prepareStatement("SELECT last_key, copied FROM " + CHECKPOINT_TABLE + " WHERE name = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    lastKey = numericKey ? (Object) Long.valueOf(rs.getString(1)) : rs.getString(1);
+                    copied = rs.getLong(2);
+                }
+            }
+        }
+        long total = copied + count(lastKey);
+
+        String[] columns = null;
+        List<Object[]> rows = new ArrayList<>();
+        while (true) {
+            rows.clear();
+            try (Connection con = source.getReadConnection();
+                    PreparedStatement ps = con.prepareStatement("SELECT * FROM " + table + ((lastKey == null) ? "" : " WHERE " + keyColumn + " > ?")
+                            + " ORDER BY " + keyColumn + " LIMIT " + batchSize)) {
+                if (lastKey != null) {
+                    ps.setObject(1, lastKey);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    if (columns == null) {
+                        columns = new String[meta.getColumnCount()];
+                        for (int i = 0; i < columns.length; i++) {
+                            columns[i] = meta.getColumnLabel(i + 1);
+                        }
+                    }
+                    while (rs.next()) {
+                        Object[] row = new Object[columns.length];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        rows.add(row);
+                        lastKey = numericKey ? (Object) rs.getLong(keyColumn) : rs.getString(keyColumn);
+                    }
+                }
+            }
+            if (rows.isEmpty()) {
+                return copied;
+            }
+            copied += rows.size();
+            write(columns, rows, lastKey, copied);
+            if (listener != null) {
+                listener.accept(copied, total);
+            }
+        }
+    }
+
+    /**
+     * Forgets the progress of the transfer, so the next run starts from the
+     * first row again.
+     *
+     * @return If the progress was reset.
+     */
+    public boolean reset() {
+        createCheckpointTable();
+        return target.executeUpdate("DELETE FROM " + CHECKPOINT_TABLE + " WHERE name = ?", table);
+    }
+
+    /**
+     * Checks if the key column holds integers, which are stored in the
+     * checkpoint in their decimal form, or strings, which are stored as they
+     * are.
+     *
+     * @return If the key column holds integers.
+     * @throws IllegalArgumentException If the key column holds another type.
+     */
+    private boolean isNumericKey() throws SQLException {
+        try (Connection con = source.getReadConnection();
+                PreparedStatement ps = con.prepareStatement("SELECT " + keyColumn + " FROM " + table + " WHERE 1 = 0");
+                ResultSet rs = ps.executeQuery()) {
+            ResultSetMetaData meta = rs.getMetaData();
+            switch (meta.getColumnType(1)) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    return true;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    return false;
+                default:
+                    throw new IllegalArgumentException("The key column " + keyColumn + " has the unsupported type "
+                            + meta.getColumnTypeName(1) + ", it must hold integers or strings");
+            }
+        }
+    }
+
+    private void write(String[] columns, List<Object[]> rows, Object lastKey, long copied) throws SQLException {
+        try (Connection con = target.getWriteConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                target.bulkInsert(con, table, columns, rows);
+                try (PreparedStatement ps = con.prepareStatement("DELETE FROM " + CHECKPOINT_TABLE + " WHERE name = ?")) {
+                    ps.setString(1, table);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = con.prepareStatement("INSERT INTO " + CHECKPOINT_TABLE + " (name, last_key, copied) VALUES (?, ?, ?)")) {
+                    ps.setString(1, table);
+                    String key = lastKey.toString();
+                    if (key.length() > MAX_KEY_LENGTH) {
+                        throw new IllegalArgumentException("The key " + key + " is longer than " + MAX_KEY_LENGTH + " characters");
+                    }
+                    ps.setString(2, key);
+                    ps.setLong(3, copied);
+                    ps.executeUpdate();
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private long count(Object lastKey) {
+        String sql = "SELECT COUNT(*) AS total FROM " + table + ((lastKey == null) ? "" : " WHERE " + keyColumn + " > ?");
+        Object[] vars = (lastKey == null) ? new Object[0] : new Object[] {lastKey};
+        return source.queryType("total", Long.class, sql, vars).orElse(0L);
+    }
+
+    private void createCheckpointTable() {
+        target.executeUpdate("CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE
+                + " (name VARCHAR(128) PRIMARY KEY, last_key VARCHAR(255), copied BIGINT)");
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps prepared statements open on the physical connections of a pool, so
+ * the same sql does not have to be parsed again every time a pooled
+ * connection is borrowed.
+ */
+public class StatementCache {
+
+    private int maxSize;
+    private final Map<Connection, Map<String, PreparedStatement>> connections = new IdentityHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets a prepared statement for the sql from the cache of the connection,
+     * preparing it if it is not cached yet. The statement must be released
+     * with {@link #release(PreparedStatement)} instead of being closed.
+     *
+     * @param con The borrowed connection.
+     * @param sql The sql of the statement.
+     * @return The prepared statement.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    PreparedStatement prepare(Connection con, String sql) throws SQLException {
+        Connection physical = physical(con);
+        Map<String, PreparedStatement> statements;
+        synchronized (connections) {
+            statements = connections.get(physical);
+            if (statements == null) {
+                purgeClosed();
+                statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() > maxSize) {
+                            evictions.incrementAndGet();
+                            close(eldest.getValue());
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+                connections.put(physical, statements);
+            }
+        }
+        synchronized (statements) {
+            PreparedStatement ps = statements.get(sql);
+            if (ps != null && !ps.isClosed()) {
+                hits.incrementAndGet();
+                return ps;
+            }
+            misses.incrementAndGet();
+            ps = physical.prepareStatement(sql);
+            statements.put(sql, ps);
+            return ps;
+        }
+    }
+
+    /**
+     * Resets a cached statement so it can be used again.
+     *
+     * @param ps The statement.
+     * @throws SQLException If the statement could not be reset.
+     */
+    void release(PreparedStatement ps) throws SQLException {
+        ps.clearParameters();
+    }
+
+    /**
+     * Closes a cached statement which failed and removes it from the cache.
+     *
+     * @param con The borrowed connection.
+     * @param sql The sql of the statement.
+     */
+    void discard(Connection con, String sql) {
+        Map<String, PreparedStatement> statements;
+        synchronized (connections) {
+            statements = connections.get(physical(con));
+        }
+        if (statements != null) {
+            synchronized (statements) {
+                PreparedStatement ps = statements.remove(sql);
+                if (ps != null) {
+                    close(ps);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of times a cached statement was reused.
+     *
+     * @return The amount of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the amount of times a statement had to be prepared.
+     *
+     * @return The amount of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the amount of statements closed to stay within the maximum size.
+     *
+     * @return The amount of evicted statements.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the ratio of requests that reused a cached statement.
+     *
+     * @return The hit rate, from 0 to 1. 1 if there were no requests.
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return (total == 0) ? 1.0 : (double) hits / total;
+    }
+
+    private void purgeClosed() {
+        Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> iterator = connections.entrySet().iterator();
+        while (iterator.hasNext()) {
+            try {
+                if (iterator.next().getKey().isClosed()) {
+                    iterator.remove();
+                }
+            } catch (SQLException e) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Connection physical(Connection con) {
+        // Pools hand out a new wrapper on every borrow, the statements belong to the connection underneath
+        try {
+            return con.unwrap(Connection.class);
+        } catch (SQLException e) {
+            return con;
+        }
+    }
+
+    private static void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            // The statement is being discarded anyway
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A cache with a second tier on the disk. Entries which are evicted from the
+ * heap because the cache is full are written to a memory-mapped file, and
+ * are moved back to the heap when they are requested again, so they do not
+ * have to be loaded from the database.
+ *
+ * <p>The disk tier has its own limits on the amount of entries, the size of
+ * the file and the age of its entries. When the file is opened, entries which
+ * are older than the age limit are dropped, and a file written with a
+ * different file size or format is cleared.</p>
+ *
+ * <p>Moving an entry back to the heap, updating it and invalidating it are
+ * serialized per key, so an entry read from the disk never replaces a newer
+ * entry on the heap.</p>
+ *
+ * @param <T> The type of the keys.
+ * @param <K> The type of the entries.
+ */
+public class TieredCacheManager<T, K> extends CacheManager<T, K> {
+
+    private DiskCacheTier disk;
+    private CacheCodec<T> keyCodec;
+    private CacheCodec<K> valueCodec;
+
+    private final Striped<Lock> locks = Striped.lock(64);
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
+
+    private TieredCacheManager(Logger logger, long maxSize, long minutes, DiskCacheTier disk, CacheCodec<T> keyCodec,
+            CacheCodec<K> valueCodec) {
+        super(logger, CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(minutes, TimeUnit.MINUTES), null);
+        this.disk = disk;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+    }
+
+    /**
+     * Creates a new TieredCacheManager.
+     *
+     * @param logger The logger.
+     * @param maxSize The maximum amount of entries on the heap.
+     * @param minutes The minutes after which an entry on the heap expires.
+     * @param file The file of the disk tier. It is created if it does not
+     *        exist.
+     * @param diskMaxSize The maximum amount of entries on the disk, at most
+     *        2^26.
+     * @param diskMaxBytes The size of the file in bytes, at most
+     *        {@link Integer#MAX_VALUE}.
+     * @param diskMinutes The minutes after which an entry on the disk
+     *        expires, counted from when it was moved to the disk.
+     * @param keyCodec Converts the keys to bytes.
+     * @param valueCodec Converts the entries to bytes.
+     * @return The new TieredCacheManager, if the file could be opened.
+     */
+    public static <T, K> Optional<TieredCacheManager<T, K>> create(Logger logger, long maxSize, long minutes, Path file, long diskMaxSize,
+            long diskMaxBytes, long diskMinutes, CacheCodec<T> keyCodec, CacheCodec<K> valueCodec) {
+        try {
+            DiskCacheTier disk = new DiskCacheTier(file, diskMaxSize, diskMaxBytes, diskMinutes, TimeUnit.MINUTES);
+            return Optional.of(new TieredCacheManager<>(logger, maxSize, minutes, disk, keyCodec, valueCodec));
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.error("Failed to open cache file " + file + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void update(T key, K entry) {
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            removeFromDisk(key);
+            super.update(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(T key) {
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            super.invalidate(key);
+            removeFromDisk(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets an entry from the heap, or from the disk if it was evicted from
+     * the heap. Entries found on the disk are moved back to the heap.
+     *
+     * @param key The key of the entry.
+     * @return The entry, or null if neither tier has an entry.
+     */
+    @Override
+    public K getIfPresent(T key) {
+        K entry = super.getIfPresent(key);
+        if (entry != null) {
+            return entry;
+        }
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            // The entry may have been moved back or updated while waiting for the lock
+            entry = getCache().asMap().get(key);
+            if (entry != null) {
+                return entry;
+            }
+            byte[] encodedKey = keyCodec.encode(key);
+            byte[] value = disk.get(encodedKey);
+            if (value == null) {
+                diskMisses.incrementAndGet();
+                return null;
+            }
+            entry = valueCodec.decode(value);
+            disk.remove(encodedKey);
+            K current = getCache().asMap().putIfAbsent(key, entry);
+            diskHits.incrementAndGet();
+            return (current == null) ? entry : current;
+        } catch (RuntimeException e) {
+            getLogger().error("Failed to read cache entry from the disk: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        disk.clear();
+    }
+
+    /**
+     * Gets the amount of entries on the disk.
+     *
+     * @return The amount of entries.
+     */
+    public int getDiskSize() {
+        return disk.size();
+    }
+
+    /**
+     * Gets the amount of bytes used by the entries on the disk.
+     *
+     * @return The amount of bytes.
+     */
+    public long getDiskBytes() {
+        return disk.getLiveBytes();
+    }
+
+    /**
+     * Gets the amount of requests which missed the heap and found an entry
+     * on the disk.
+     *
+     * @return The amount of requests.
+     */
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    /**
+     * Gets the amount of requests which missed both tiers.
+     *
+     * @return The amount of requests.
+     */
+    public long getDiskMissCount() {
+        return diskMisses.get();
+    }
+
+    /**
+     * Writes the entries on the heap to the disk and closes the file. The
+     * cache should not be used afterwards.
+     */
+    public void close() {
+        for (Map.Entry<T, K> entry : getCache().asMap().entrySet()) {
+            writeToDisk(entry.getKey(), entry.getValue());
+        }
+        try {
+            disk.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            getLogger().error(e.getMessage());
+        }
+    }
+
+    @Override
+    protected void onRemoval(RemovalNotification<T, K> notification) {
+        super.onRemoval(notification);
+        if (notification.getKey() == null || notification.getValue() == null) {
+            return;
+        }
+        if (notification.getCause() == RemovalCause.SIZE) {
+            writeToDisk(notification.getKey(), notification.getValue());
+        } else if (notification.getCause() != RemovalCause.REPLACED) {
+            // An older copy may have been written to the disk while this entry was updated
+            removeFromDisk(notification.getKey());
+        }
+    }
+
+    private void writeToDisk(T key, K entry) {
+        try {
+            disk.put(keyCodec.encode(key), valueCodec.encode(entry));
+        } catch (RuntimeException e) {
+            getLogger().error("Failed to write cache entry to the disk: " + e.getMessage());
+        }
+    }
+
+    private void removeFromDisk(T key) {
+        try {
+            disk.remove(keyCodec.encode(key));
+        } catch (RuntimeException e) {
+            getLogger().error("Failed to remove cache entry from the disk: " + e.getMessage());
+        }
+    }
+}
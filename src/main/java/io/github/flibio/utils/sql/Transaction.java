@@ -0,0 +1,247 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The statements of a transaction, which all run on one connection and are
+ * committed together. Unlike the methods of {@link SqlManager}, a failed
+ * statement throws an exception, which rolls the whole transaction back.
+ * Statements with the same sql are prepared once per transaction.
+ */
+public class Transaction {
+
+    private SqlManager manager;
+    private Connection connection;
+    private boolean rollbackOnly = false;
+    private Map<String, PreparedStatement> statements = new HashMap<>();
+
+    Transaction(SqlManager manager, Connection connection) {
+        this.manager = manager;
+        this.connection = connection;
+    }
+
+    /**
+     * Executes an update.
+     *
+     * @param sql The sql to execute.
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @return The amount of changed rows.
+     * @throws SQLException If the update failed.
+     */
+    public int executeUpdate(String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = prepare(sql);
+            SqlManager.bind(ps, vars);
+            return ps.executeUpdate();
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Executes an update once for every set of variables in a single batch.
+     *
+     * @param sql The sql to execute.
+     * @param rows The variables of each row.
+     * @return The update count of each row.
+     * @throws SQLException If the batch failed.
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement ps = prepare(sql);
+            for (Object[] vars : rows) {
+                SqlManager.bind(ps, vars);
+                ps.addBatch();
+            }
+            return ps.executeBatch();
+        } finally {
+            manager.getQueryMetrics().record(sql, rows.isEmpty() ? 0 : rows.get(0).length, start);
+        }
+    }
+
+    /**
+     * Inserts a row, or updates the row with the same keys if one exists.
+     *
+     * @param table The table.
+     * @param keyColumns The columns of the key, contained in the values.
+     * @param values The value of each column.
+     * @return The update count reported by the database.
+     * @throws SQLException If the upsert failed.
+     * @see SqlManager#upsert(String, String[], Map)
+     */
+    public int upsert(String table, String[] keyColumns, Map<String, ?> values) throws SQLException {
+        String[] columns = values.keySet().toArray(new String[0]);
+        return executeUpdate(manager.upsertSql(table, keyColumns, columns), values.values().toArray());
+    }
+
+    /**
+     * Queries a column of the first row.
+     *
+     * @param columnName The column to retrieve.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql.
+     * @return The column's data, if it was found.
+     * @throws SQLException If the query failed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> queryType(String columnName, Class<T> type, String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = query(sql, vars)) {
+            return Optional.ofNullable(rs.next() ? (T) ColumnTypes.convert(rs.getObject(columnName), type) : null);
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries a column of every row.
+     *
+     * @param columnName The column to retrieve.
+     * @param type The type of data to retrieve.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql.
+     * @return The list of data.
+     * @throws SQLException If the query failed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> queryTypeList(String columnName, Class<T> type, String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = query(sql, vars)) {
+            List<T> list = new ArrayList<>();
+            while (rs.next()) {
+                list.add((T) ColumnTypes.convert(rs.getObject(columnName), type));
+            }
+            return list;
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries the first row and maps it to an object.
+     *
+     * @param mapper The mapper of the row.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql.
+     * @return The mapped row, if it was found.
+     * @throws SQLException If the query failed.
+     */
+    public <T> Optional<T> queryRow(RowMapper<T> mapper, String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = query(sql, vars)) {
+            return Optional.ofNullable(rs.next() ? mapper.bind(rs.getMetaData()).map(rs) : null);
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Queries every row and maps them to objects.
+     *
+     * @param mapper The mapper of the rows.
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql.
+     * @return The list of mapped rows.
+     * @throws SQLException If the query failed.
+     */
+    public <T> List<T> queryRows(RowMapper<T> mapper, String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = query(sql, vars)) {
+            List<T> list = new ArrayList<>();
+            RowMapper<T> bound = mapper.bind(rs.getMetaData());
+            while (rs.next()) {
+                list.add(bound.map(rs));
+            }
+            return list;
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Checks if a query finds a row.
+     *
+     * @param sql The sql to run.
+     * @param vars The variables to replace in the sql.
+     * @return If a row was found.
+     * @throws SQLException If the query failed.
+     */
+    public boolean queryExists(String sql, Object... vars) throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet rs = query(sql, vars)) {
+            return rs.next();
+        } finally {
+            manager.getQueryMetrics().record(sql, vars.length, start);
+        }
+    }
+
+    /**
+     * Rolls the transaction back when the callback returns instead of
+     * committing it, for example when a balance turned out to be too low. The
+     * result of the callback is still returned.
+     */
+    public void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    /**
+     * Gets the connection of the transaction, for statements the transaction
+     * does not offer. It must not be closed or committed.
+     *
+     * @return The connection.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Closes the statements of the transaction.
+     */
+    void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                // The connection is returned to the pool anyway
+            }
+        }
+        statements.clear();
+    }
+
+    private ResultSet query(String sql, Object[] vars) throws SQLException {
+        PreparedStatement ps = prepare(sql);
+        SqlManager.bind(ps, vars);
+        return ps.executeQuery();
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import java.sql.SQLException;
+
+/**
+ * The work of a transaction, see {@link SqlManager#transaction}.
+ *
+ * @param <R> The type of the result.
+ */
+@FunctionalInterface
+public interface TransactionCallback<R> {
+
+    /**
+     * Runs the work of a transaction. Throwing an exception rolls the
+     * transaction back. The callback may run more than once if the
+     * transaction is retried after a deadlock, so it should not have side
+     * effects outside of the database.
+     *
+     * @param transaction The transaction.
+     * @return The result.
+     * @throws SQLException If a statement failed.
+     */
+    R run(Transaction transaction) throws SQLException;
+}
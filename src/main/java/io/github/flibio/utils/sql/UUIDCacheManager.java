@@ -0,0 +1,269 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache keyed by {@link UUID} with the same size bound and expiry as
+ * {@link CacheManager}, for caches with many entries. Keys are stored as two
+ * longs in open addressing arrays instead of as UUID objects in linked
+ * entries, and looking up an entry allocates nothing.
+ *
+ * <p>Each slot takes two longs, a value reference, an int write time and a
+ * reference bit, at a load factor between 0.375 and 0.75. Filling this cache
+ * with 500,000 entries allocates about 26 MB against about 57 MB for a
+ * {@link CacheManager}, which also keeps the UUID objects of its keys alive,
+ * not counting the values themselves. These numbers are the
+ * gc.alloc.rate.norm results of FootprintBenchmark with -prof gc on a 64 bit
+ * Java 8 JVM with compressed references.</p>
+ *
+ * <p>When the cache is full the entry to evict is chosen with the CLOCK
+ * algorithm, which approximates least recently used eviction. Write times are
+ * kept with a precision of one second. All methods are synchronized.</p>
+ *
+ * @param <K> The type of the entries.
+ */
+public class UUIDCacheManager<K> {
+
+    private static final float MAX_LOAD = 0.75f;
+
+    private Logger logger;
+    private int maxSize;
+    private long ttlSeconds;
+    private long origin = System.nanoTime();
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private Object[] values;
+    private int[] writeTimes;
+    private boolean[] referenced;
+    private int mask;
+    private int size = 0;
+    private int hand = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long[] removals = new long[RemovalCause.values().length];
+
+    private UUIDCacheManager(Logger logger, long maxSize, long minutes) {
+        if (maxSize < 0 || maxSize > (1 << 29)) {
+            throw new IllegalArgumentException("maxSize must be between 0 and " + (1 << 29));
+        }
+        this.logger = logger;
+        this.maxSize = (int) maxSize;
+        this.ttlSeconds = TimeUnit.MINUTES.toSeconds(minutes);
+        int capacity = Integer.highestOneBit(Math.max(2, (int) Math.ceil(maxSize / MAX_LOAD)) - 1) << 1;
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.values = new Object[capacity];
+        this.writeTimes = new int[capacity];
+        this.referenced = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Creates a new UUIDCacheManager. The arrays for the maximum amount of
+     * entries are allocated immediately.
+     *
+     * @param logger The logger.
+     * @param maxSize The maximum amount of entries.
+     * @param minutes The minutes after which an entry expires.
+     * @return The new UUIDCacheManager.
+     */
+    public static <K> UUIDCacheManager<K> create(Logger logger, long maxSize, long minutes) {
+        return new UUIDCacheManager<>(logger, maxSize, minutes);
+    }
+
+    public synchronized void update(UUID key, K entry) {
+        if (entry == null) {
+            throw new NullPointerException("entry");
+        }
+        if (maxSize == 0) {
+            return;
+        }
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        if (slot >= 0) {
+            removals[RemovalCause.REPLACED.ordinal()]++;
+        } else {
+            if (size >= maxSize) {
+                evict();
+            }
+            slot = ~find(msb, lsb);
+            mostBits[slot] = msb;
+            leastBits[slot] = lsb;
+            size++;
+        }
+        values[slot] = entry;
+        writeTimes[slot] = now();
+        referenced[slot] = false;
+    }
+
+    public K getIfPresent(UUID key) {
+        return getIfPresent(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Gets an entry by the bits of its key, for callers which store UUIDs as
+     * two longs themselves.
+     *
+     * @param mostSigBits The most significant bits of the key.
+     * @param leastSigBits The least significant bits of the key.
+     * @return The entry, or null if the key has no entry or it expired.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized K getIfPresent(long mostSigBits, long leastSigBits) {
+        int slot = find(mostSigBits, leastSigBits);
+        if (slot < 0) {
+            misses++;
+            return null;
+        }
+        if (isExpired(slot, now())) {
+            remove(slot, RemovalCause.EXPIRED);
+            misses++;
+            return null;
+        }
+        referenced[slot] = true;
+        hits++;
+        return (K) values[slot];
+    }
+
+    /**
+     * Removes the entry of a key.
+     *
+     * @param key The key.
+     */
+    public synchronized void invalidate(UUID key) {
+        int slot = find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (slot >= 0) {
+            remove(slot, RemovalCause.EXPLICIT);
+        }
+    }
+
+    public synchronized void clear() {
+        removals[RemovalCause.EXPLICIT.ordinal()] += size;
+        Arrays.fill(values, null);
+        Arrays.fill(referenced, false);
+        size = 0;
+    }
+
+    /**
+     * Gets the amount of entries in the cache, including expired entries
+     * which have not been removed yet.
+     *
+     * @return The size.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Takes a snapshot of the statistics of the cache. The cache does not
+     * load entries, so the load statistics are always 0.
+     *
+     * @return The statistics.
+     */
+    public synchronized CacheStatsSnapshot getStats() {
+        long evictions = removals[RemovalCause.SIZE.ordinal()] + removals[RemovalCause.EXPIRED.ordinal()];
+        return new CacheStatsSnapshot(size, new CacheStats(hits, misses, 0, 0, 0, evictions), removals.clone());
+    }
+
+    protected Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @return The slot of the key, or the complement of the empty slot where
+     *         it would be inserted.
+     */
+    private int find(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (values[slot] != null) {
+            if (mostBits[slot] == msb && leastBits[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    /**
+     * Sweeps the clock hand over the slots, giving referenced entries a second
+     * chance, and removes the first entry which is expired or was not
+     * referenced since the last sweep.
+     */
+    private void evict() {
+        int now = now();
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            if (values[slot] == null) {
+                continue;
+            }
+            if (isExpired(slot, now)) {
+                remove(slot, RemovalCause.EXPIRED);
+                return;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                remove(slot, RemovalCause.SIZE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Empties a slot and shifts back the entries after it which would no
+     * longer be found, so no tombstones are needed.
+     */
+    private void remove(int slot, RemovalCause cause) {
+        removals[cause.ordinal()]++;
+        size--;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(mostBits[next], leastBits[next]) & mask;
+            // Move the entry into the gap if its home slot is not between the gap and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                mostBits[gap] = mostBits[next];
+                leastBits[gap] = leastBits[next];
+                values[gap] = values[next];
+                writeTimes[gap] = writeTimes[next];
+                referenced[gap] = referenced[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        referenced[gap] = false;
+    }
+
+    private boolean isExpired(int slot, int now) {
+        return now - writeTimes[slot] >= ttlSeconds;
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - origin);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ (lsb * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects updates for a single sql statement and writes them to the database
+ * in batches. Updates queued for the same key are merged, so only the latest
+ * variables of each key are written.
+ *
+ * <p>A batch is written in one transaction. When it fails, for example while
+ * the database is unreachable, its updates are queued again unless a newer
+ * update was queued for the same key in the meantime. An update which failed
+ * {@value #MAX_ATTEMPTS} flushes in a row is dropped and reported to the
+ * result listener as {@link Statement#EXECUTE_FAILED}. Since one update which
+ * can never be written fails the whole batch, the updates written with it
+ * can be dropped as well.</p>
+ *
+ * @param <K> The type of key used to merge updates.
+ */
+public class WriteBehindQueue<K> {
+
+    /**
+     * The amount of failed flushes after which an update is dropped.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private SqlManager manager;
+    private String sql;
+    private int maxSize;
+    private volatile BiConsumer<K, Integer> listener;
+
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService executor;
+    private Map<K, Object[]> pending = new LinkedHashMap<>();
+    private Map<K, Integer> attempts = new HashMap<>();
+    private boolean closed = false;
+
+    private WriteBehindQueue(SqlManager manager, String sql, int maxSize, long interval, TimeUnit unit) {
+        this.manager = manager;
+        this.sql = sql;
+        this.maxSize = maxSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("utils-sql-write-behind-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.scheduleWithFixedDelay(this::periodicFlush, interval, interval, unit);
+    }
+
+    /**
+     * Creates a new WriteBehindQueue. The queue is flushed when it holds the
+     * maximum amount of keys, and periodically on the given interval.
+     *
+     * @param <K> The type of key used to merge updates.
+     * @param manager The manager to write the updates with.
+     * @param sql The sql to execute for every update.
+     * @param maxSize The amount of pending keys which triggers a flush.
+     * @param interval The time between periodic flushes.
+     * @param unit The unit of the interval.
+     * @return The new WriteBehindQueue.
+     */
+    public static <K> WriteBehindQueue<K> create(SqlManager manager, String sql, int maxSize, long interval, TimeUnit unit) {
+        return new WriteBehindQueue<>(manager, sql, maxSize, interval, unit);
+    }
+
+    /**
+     * Sets the listener which receives the update count of every key written
+     * by a flush. Keys whose update was dropped after
+     * {@value #MAX_ATTEMPTS} failed flushes receive
+     * {@link Statement#EXECUTE_FAILED}. Exceptions thrown by the listener are
+     * logged and do not stop the queue.
+     *
+     * @param listener The listener.
+     */
+    public void setResultListener(BiConsumer<K, Integer> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues an update. Replaces any update still pending for the same key.
+     *
+     * @param key The key of the update.
+     * @param vars The variables to replace in the sql. Replaced in
+     *        chronological order.
+     * @throws IllegalStateException If the queue was closed.
+     */
+    public void queue(K key, Object... vars) {
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The queue is closed");
+            }
+            pending.remove(key);
+            pending.put(key, vars);
+            attempts.remove(key);
+            full = pending.size() >= maxSize;
+        }
+        if (full) {
+            try {
+                executor.execute(this::periodicFlush);
+            } catch (RejectedExecutionException e) {
+                // The queue is being closed, which flushes the update
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of keys waiting to be written.
+     *
+     * @return The amount of pending keys.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all pending updates to the database in a single batch. Updates
+     * which could not be written are queued again.
+     *
+     * @return The amount of keys that were written.
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            Map<K, Object[]> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            List<K> keys = new ArrayList<>(batch.keySet());
+            List<Object[]> rows = new ArrayList<>(batch.values());
+            int[] results = manager.executeBatch(sql, rows);
+            int written = 0;
+            for (int i = 0; i < results.length; i++) {
+                K key = keys.get(i);
+                if (results[i] != Statement.EXECUTE_FAILED) {
+                    written++;
+                    synchronized (this) {
+                        attempts.remove(key);
+                    }
+                    report(key, results[i]);
+                } else if (!requeue(key, rows.get(i))) {
+                    report(key, Statement.EXECUTE_FAILED);
+                }
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Queues a failed update again, unless a newer update was queued for its
+     * key since.
+     *
+     * @return If the update was queued again or replaced, false if it was
+     *         dropped.
+     */
+    private synchronized boolean requeue(K key, Object[] vars) {
+        if (pending.containsKey(key)) {
+            return true;
+        }
+        int failed = attempts.merge(key, 1, Integer::sum);
+        if (failed >= MAX_ATTEMPTS) {
+            attempts.remove(key);
+            manager.getLogger().error("Dropped the update of " + key + " after " + failed + " failed attempts.");
+            return false;
+        }
+        pending.put(key, vars);
+        return true;
+    }
+
+    private void report(K key, int result) {
+        BiConsumer<K, Integer> listener = this.listener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(key, result);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            manager.getLogger().error("The result listener failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes all pending updates and stops the periodic flushing. Updates
+     * which still could not be written are dropped and reported as
+     * {@link Statement#EXECUTE_FAILED}. Updates can no longer be queued
+     * afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        flush();
+        Map<K, Object[]> unwritten;
+        synchronized (this) {
+            unwritten = pending;
+            pending = new LinkedHashMap<>();
+            attempts.clear();
+        }
+        if (!unwritten.isEmpty()) {
+            manager.getLogger().error("Dropped " + unwritten.size() + " updates which could not be written before closing.");
+            for (K key : unwritten.keySet()) {
+                report(key, Statement.EXECUTE_FAILED);
+            }
+        }
+    }
+
+    private void periodicFlush() {
+        // An exception would cancel the periodic flushing for good
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            manager.getLogger().error(e.getMessage());
+        }
+    }
+}
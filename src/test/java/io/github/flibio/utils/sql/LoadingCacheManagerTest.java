@@ -0,0 +1,93 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class LoadingCacheManagerTest {
+
+    @Test
+    public void keysAreIteratedOnce() {
+        LoadingCacheManager<String, String> cache = create(keys -> {
+            Map<String, String> entries = new HashMap<>();
+            keys.forEach(key -> entries.put(key, key.toUpperCase()));
+            return entries;
+        });
+        Iterator<String> keys = Arrays.asList("a", "b", "a").iterator();
+        Iterable<String> once = () -> keys;
+
+        Map<String, String> entries = cache.getAll(once);
+        assertEquals(2, entries.size());
+        assertEquals("A", entries.get("a"));
+        assertEquals("B", entries.get("b"));
+    }
+
+    @Test
+    public void keysWithoutEntryAreLeftOut() {
+        LoadingCacheManager<String, String> cache = create(keys -> {
+            Map<String, String> entries = new HashMap<>();
+            entries.put("a", "A");
+            entries.put("b", null);
+            return entries;
+        });
+
+        Map<String, String> entries = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(1, entries.size());
+        assertEquals("A", entries.get("a"));
+        assertEquals("A", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+    }
+
+    @Test
+    public void concurrentBulkLoadsShareKeys() throws Exception {
+        AtomicInteger loadedKeys = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCacheManager<String, String> cache = create(keys -> {
+            loadedKeys.addAndGet(keys.size());
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Map<String, String> entries = new HashMap<>();
+            keys.forEach(key -> entries.put(key, key.toUpperCase()));
+            return entries;
+        });
+
+        CompletableFuture<Map<String, String>> first = CompletableFuture.supplyAsync(() -> cache.getAll(Arrays.asList("a", "b")));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Map<String, String>> second = CompletableFuture.supplyAsync(() -> cache.getAll(Arrays.asList("a", "b", "c")));
+        // Lets the second load claim its keys before the first one finishes
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(2, first.get(10, TimeUnit.SECONDS).size());
+        assertEquals(3, second.get(10, TimeUnit.SECONDS).size());
+        assertEquals(3, loadedKeys.get());
+    }
+
+    private static LoadingCacheManager<String, String> create(Function<Set<String>, Map<String, String>> bulkLoader) {
+        return LoadingCacheManager.create(LoggerFactory.getLogger(LoadingCacheManagerTest.class), 100, 60, 0, String::toUpperCase,
+                bulkLoader);
+    }
+}
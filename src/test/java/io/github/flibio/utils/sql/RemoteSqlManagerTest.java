@@ -0,0 +1,125 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RemoteSqlManagerTest {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private TestSqlService service = new TestSqlService();
+    private String primary;
+    private String replica0;
+    private String replica1;
+    private RemoteSqlManager manager;
+
+    @Before
+    public void setUp() {
+        int id = databases.incrementAndGet();
+        primary = url("primary" + id);
+        replica0 = url("replica0_" + id);
+        replica1 = url("replica1_" + id);
+        manager = new RemoteSqlManager(LoggerFactory.getLogger(getClass()), primary, Arrays.asList(replica0, replica1),
+                ReplicaSelection.ROUND_ROBIN, service);
+        assertTrue(manager.initialTestConnection());
+        // Each database knows its own name, so a query tells which server answered it
+        for (String url : Arrays.asList(primary, replica0, replica1)) {
+            try (java.sql.Connection con = service.getDataSource(url).getConnection()) {
+                con.createStatement().execute("CREATE TABLE server (name VARCHAR(16))");
+                con.createStatement().execute("INSERT INTO server VALUES ('" + url.substring(url.indexOf("mem:") + 4, url.indexOf(';')) + "')");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    public void readsAreSpreadOverReplicas() {
+        String first = server();
+        String second = server();
+        assertTrue(first.startsWith("replica"));
+        assertTrue(second.startsWith("replica"));
+        assertTrue(!first.equals(second));
+        assertEquals(first, server());
+    }
+
+    @Test
+    public void writesGoToPrimary() {
+        assertTrue(manager.executeUpdate("UPDATE server SET name = 'written'"));
+        try (RemoteSqlManager.PrimarySession session = manager.pinToPrimary()) {
+            assertEquals("written", server());
+        }
+        assertTrue(server().startsWith("replica"));
+    }
+
+    @Test
+    public void unavailableReplicaIsSkipped() {
+        service.fail(replica0, new SQLException("Connection refused", "08001"));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica1_" + databases.get(), server());
+        }
+        assertEquals(1, manager.getReplicaRouter().get().getHealthyReplicaCount());
+
+        service.fail(replica1, new SQLException("Connection refused", "08001"));
+        assertTrue(server().startsWith("primary"));
+        assertEquals(0, manager.getReplicaRouter().get().getHealthyReplicaCount());
+
+        service.fail(replica0, null);
+        service.fail(replica1, null);
+        manager.getReplicaRouter().get().checkHealth();
+        assertEquals(2, manager.getReplicaRouter().get().getHealthyReplicaCount());
+        assertTrue(server().startsWith("replica"));
+    }
+
+    @Test
+    public void busyReplicaStaysInRotation() {
+        service.fail(replica0, new SQLTransientConnectionException("Connection is not available, request timed out"));
+        assertEquals("replica1_" + databases.get(), server());
+        assertEquals("replica1_" + databases.get(), server());
+        assertEquals(2, manager.getReplicaRouter().get().getHealthyReplicaCount());
+
+        service.fail(replica0, null);
+        String first = server();
+        String second = server();
+        assertTrue(!first.equals(second));
+    }
+
+    @Test
+    public void readsFollowWritesWithinWindow() {
+        manager.setReadYourWritesWindow(1, TimeUnit.MINUTES);
+        assertTrue(server().startsWith("replica"));
+        assertTrue(manager.executeUpdate("UPDATE server SET name = 'written'"));
+        assertEquals("written", server());
+
+        manager.setReadYourWritesWindow(0, TimeUnit.MINUTES);
+        assertTrue(server().startsWith("replica"));
+    }
+
+    private String server() {
+        return manager.queryType("name", String.class, "SELECT name FROM server").get();
+    }
+
+    private static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SqlInvalidationTransportTest {
+
+    private static final String PRIMARY = "jdbc:h2:mem:invalidation;DB_CLOSE_DELAY=-1";
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+    private TestSqlService service = new TestSqlService();
+    private RemoteSqlManager first;
+    private RemoteSqlManager second;
+    private InvalidationBus firstBus;
+    private InvalidationBus secondBus;
+
+    @Before
+    public void setUp() {
+        // Each server has its own replica, which never receives the rows of the log table
+        first = createManager("jdbc:h2:mem:invalidation_replica1;DB_CLOSE_DELAY=-1");
+        second = createManager("jdbc:h2:mem:invalidation_replica2;DB_CLOSE_DELAY=-1");
+        firstBus = InvalidationBus.create(logger, SqlInvalidationTransport.create(first), 1, TimeUnit.HOURS);
+        secondBus = InvalidationBus.create(logger, SqlInvalidationTransport.create(second), 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void tearDown() {
+        firstBus.close();
+        secondBus.close();
+        first.executeUpdate("DROP TABLE " + SqlInvalidationTransport.DEFAULT_TABLE);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void invalidationsReachOtherServer() {
+        List<String> keys = Collections.synchronizedList(new ArrayList<>());
+        List<String> cleared = Collections.synchronizedList(new ArrayList<>());
+        secondBus.subscribe("balances", keys::add, () -> cleared.add("balances"));
+        firstBus.poll();
+        secondBus.poll();
+
+        firstBus.invalidate("balances", "a");
+        firstBus.invalidate("balances", "b");
+        firstBus.invalidate("balances", "a");
+        assertTrue(firstBus.flush());
+        secondBus.poll();
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains("a") && keys.contains("b"));
+
+        firstBus.invalidateAll("balances");
+        assertTrue(firstBus.flush());
+        secondBus.poll();
+        assertEquals(1, cleared.size());
+        assertEquals(3, secondBus.getReceivedCount());
+    }
+
+    @Test
+    public void earlierInvalidationsAreNotApplied() {
+        firstBus.invalidate("balances", "a");
+        assertTrue(firstBus.flush());
+
+        List<String> keys = Collections.synchronizedList(new ArrayList<>());
+        secondBus.subscribe("balances", keys::add, () -> {
+        });
+        secondBus.poll();
+        assertEquals(0, keys.size());
+
+        firstBus.invalidate("balances", "b");
+        assertTrue(firstBus.flush());
+        secondBus.poll();
+        assertEquals(Collections.singletonList("b"), keys);
+    }
+
+    private RemoteSqlManager createManager(String replica) {
+        RemoteSqlManager manager = new RemoteSqlManager(logger, PRIMARY, Collections.singletonList(replica), ReplicaSelection.ROUND_ROBIN,
+                service);
+        assertTrue(manager.initialTestConnection());
+        return manager;
+    }
+}
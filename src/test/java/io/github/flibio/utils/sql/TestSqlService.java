@@ -0,0 +1,70 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.spongepowered.api.service.sql.SqlService;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+/**
+ * Stands in for the SqlService of the server with H2 databases whose
+ * connections can be made to fail.
+ */
+class TestSqlService implements SqlService {
+
+    private final Map<String, DataSource> sources = new ConcurrentHashMap<>();
+    private final Map<String, SQLException> failures = new ConcurrentHashMap<>();
+
+    @Override
+    public DataSource getDataSource(String jdbcConnection) {
+        return sources.computeIfAbsent(jdbcConnection, url -> {
+            JdbcDataSource h2 = new JdbcDataSource();
+            h2.setURL(url);
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                SQLException failure = failures.get(url);
+                if (failure != null && method.getName().equals("getConnection")) {
+                    throw failure;
+                }
+                try {
+                    return method.invoke(h2, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        });
+    }
+
+    @Override
+    public DataSource getDataSource(Object plugin, String jdbcConnection) {
+        return getDataSource(jdbcConnection);
+    }
+
+    @Override
+    public Optional<String> getConnectionUrlFromAlias(String alias) {
+        return Optional.empty();
+    }
+
+    /**
+     * Makes every new connection to a database fail.
+     *
+     * @param url The url of the database.
+     * @param failure The exception to throw, or null to stop failing.
+     */
+    void fail(String url, SQLException failure) {
+        if (failure == null) {
+            failures.remove(url);
+        } else {
+            failures.put(url, failure);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Utils, licensed under the MIT License (MIT). See the LICENSE file at the root of this project for more information.
+ */
+
+package io.github.flibio.utils.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TieredCacheManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch decoding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean block = false;
+
+    private TieredCacheManager<String, String> cache;
+
+    @Before
+    public void setUp() throws IOException {
+        CacheCodec<String> string = CacheCodec.string();
+        // Pauses a promotion between reading the entry from the disk and moving it to the heap
+        CacheCodec<String> blocking = new CacheCodec<String>() {
+
+            @Override
+            public byte[] encode(String value) {
+                return string.encode(value);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                if (block) {
+                    decoding.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return string.decode(bytes);
+            }
+        };
+        cache = TieredCacheManager.create(LoggerFactory.getLogger(getClass()), 1, 60, folder.newFile("cache").toPath(), 100, 1 << 16, 60,
+                string, blocking).get();
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void promotesEvictedEntries() {
+        cache.update("a", "1");
+        cache.update("b", "2");
+        assertEquals(1, cache.getDiskSize());
+        assertEquals("1", cache.getIfPresent("a"));
+        assertEquals(1, cache.getDiskHitCount());
+        assertEquals("2", cache.getIfPresent("b"));
+        assertNull(cache.getIfPresent("c"));
+    }
+
+    @Test
+    public void updateDuringPromotionIsKept() throws Exception {
+        cache.update("a", "old");
+        cache.update("b", "other");
+        block = true;
+
+        Thread promotion = new Thread(() -> cache.getIfPresent("a"));
+        promotion.start();
+        decoding.await(10, TimeUnit.SECONDS);
+        Thread update = new Thread(() -> cache.update("a", "new"));
+        update.start();
+        waitUntilBlocked(update);
+        release.countDown();
+        promotion.join(10000);
+        update.join(10000);
+
+        block = false;
+        assertEquals("new", cache.getIfPresent("a"));
+    }
+
+    @Test
+    public void invalidateDuringPromotionIsKept() throws Exception {
+        cache.update("a", "old");
+        cache.update("b", "other");
+        block = true;
+
+        Thread promotion = new Thread(() -> cache.getIfPresent("a"));
+        promotion.start();
+        decoding.await(10, TimeUnit.SECONDS);
+        Thread invalidation = new Thread(() -> cache.invalidate("a"));
+        invalidation.start();
+        waitUntilBlocked(invalidation);
+        release.countDown();
+        promotion.join(10000);
+        invalidation.join(10000);
+
+        block = false;
+        assertNull(cache.getIfPresent("a"));
+    }
+
+    private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (thread.isAlive() && thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}